@@ -0,0 +1,180 @@
+package org.guavaberry.benchmarks;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compare two JMH result files in JSON format (produced with {@code -rf json}) and report the regressions.
+ *
+ * <p>For each benchmark present in both files the primary score and, when the benchmarks ran with
+ * {@code -prof gc}, the normalized allocation rate are compared. A result is a regression whenever it is
+ * worse than the baseline by more than the threshold (10% by default), taking into account whether higher
+ * is better (throughput) or lower is better (time, allocation).
+ *
+ * <p>Differences that are within the sum of the score errors of the two runs are considered noise, and so are
+ * allocation differences below 1 byte per operation: benchmarks that do not allocate report values around
+ * zero, where a relative change is meaningless.
+ *
+ * <p>Usage:
+ * <pre>
+ * {@code
+ *     java -cp guavaberry-benchmarks/target/benchmarks.jar org.guavaberry.benchmarks.BaselineComparison \
+ *         baseline.json current.json [threshold-percent]
+ * }
+ * </pre>
+ *
+ * <p>The process exits with status 1 if there is at least one regression, so it can be used in a CI job.
+ */
+public final class BaselineComparison {
+    /**
+     * The default threshold in percent.
+     */
+    private static final double DEFAULT_THRESHOLD = 10.0D;
+
+    /**
+     * The JMH secondary metric for the bytes allocated per operation.
+     */
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    /**
+     * The allocation differences in bytes per operation below which the allocation is considered unchanged.
+     */
+    private static final double ALLOCATION_TOLERANCE = 1.0D;
+
+    /**
+     * Private constructor.
+     */
+    private BaselineComparison() { }
+
+    /**
+     * @param args the baseline file, the current file and optionally the threshold in percent.
+     * @throws IOException if a file cannot be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <current.json> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> current = read(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format("%-100s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            Score after = entry.getValue();
+            double worsening = after.higherIsBetter ? before.value - after.value : after.value - before.value;
+            boolean noise = worsening <= after.tolerance || worsening <= before.error + after.error;
+            boolean regression = !noise
+                    && (before.value == 0.0D || worsening / Math.abs(before.value) * 100.0D > threshold);
+            if (regression) {
+                regressions++;
+            }
+            String change = before.value == 0.0D ? "n/a"
+                    : String.format("%+.1f%%", (after.value - before.value) / Math.abs(before.value) * 100.0D);
+            System.out.println(String.format("%-100s %14.3f %14.3f %9s %s %s", entry.getKey(), before.value,
+                                             after.value, change, after.unit, regression ? "REGRESSION" : ""));
+        }
+        System.out.println(String.format("%d regression(s) above %.1f%%", regressions, threshold));
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param file the JMH result file.
+     * @return the scores keyed by benchmark, mode, threads, parameters and metric.
+     * @throws IOException if the file cannot be read.
+     */
+    private static Map<String, Score> read(final String file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject result = element.getAsJsonObject();
+                String mode = result.get("mode").getAsString();
+                StringBuilder key = new StringBuilder(result.get("benchmark").getAsString())
+                        .append(" ").append(mode)
+                        .append(" t=").append(result.get("threads").getAsInt());
+                if (result.has("params")) {
+                    Map<String, String> params = new TreeMap<>();
+                    result.getAsJsonObject("params").entrySet()
+                            .forEach(e -> params.put(e.getKey(), e.getValue().getAsString()));
+                    key.append(" ").append(params);
+                }
+                JsonObject primary = result.getAsJsonObject("primaryMetric");
+                scores.put(key.toString(), new Score(primary, "thrpt".equals(mode), 0.0D));
+
+                if (result.has("secondaryMetrics")) {
+                    for (Map.Entry<String, JsonElement> metric
+                            : result.getAsJsonObject("secondaryMetrics").entrySet()) {
+                        // Older JMH versions prefix the profiler metrics with a middle dot
+                        if (metric.getKey().replace("·", "").equals(ALLOCATION_METRIC)) {
+                            scores.put(key + " " + ALLOCATION_METRIC,
+                                       new Score(metric.getValue().getAsJsonObject(), false, ALLOCATION_TOLERANCE));
+                        }
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * A benchmark score.
+     */
+    private static final class Score {
+        /**
+         * The value of the score.
+         */
+        private final double value;
+
+        /**
+         * The half-width of the confidence interval of the score, zero if JMH could not compute it.
+         */
+        private final double error;
+
+        /**
+         * The unit of the score.
+         */
+        private final String unit;
+
+        /**
+         * Whether a higher value is better than a lower one.
+         */
+        private final boolean higherIsBetter;
+
+        /**
+         * The absolute difference below which the score is considered unchanged.
+         */
+        private final double tolerance;
+
+        /**
+         * @param metric the JMH metric.
+         * @param higherIsBetter whether a higher value is better than a lower one.
+         * @param tolerance the absolute difference below which the score is considered unchanged.
+         */
+        Score(final JsonObject metric, final boolean higherIsBetter, final double tolerance) {
+            this.value = metric.get("score").getAsDouble();
+            double scoreError = metric.has("scoreError") ? metric.get("scoreError").getAsDouble() : 0.0D;
+            // JMH reports NaN when there are not enough samples to compute the error
+            this.error = Double.isNaN(scoreError) ? 0.0D : scoreError;
+            this.unit = metric.get("scoreUnit").getAsString();
+            this.higherIsBetter = higherIsBetter;
+            this.tolerance = tolerance;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.guavaberry.benchmarks.collections;
+
+import org.guavaberry.collections.DefaultHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link DefaultHashMap#get(Object)} compared with {@link HashMap#computeIfAbsent}, the idiomatic
+ * JDK 8 way of getting a default value, across hit ratios and map sizes.
+ *
+ * <p>A lookup misses when the key is not in the map. Since both methods insert the missing keys, the inserted
+ * key is removed right after a miss so that the hit ratio stays the same for the whole run. The removal has
+ * the same cost for both methods.
+ *
+ * <p>{@link HashMap} is not thread safe, so the multi threaded benchmarks use a map for each thread: they
+ * measure how the lookups scale with the allocation and memory pressure of concurrent threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultHashMapBenchmark {
+    /**
+     * The number of precomputed lookup keys (must be a power of two).
+     */
+    private static final int LOOKUPS = 1 << 14;
+
+    /**
+     * The number of threads of the multi threaded benchmarks.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * The number of keys in the map.
+     */
+    @Param({"16", "1024", "65536"})
+    private int size;
+
+    /**
+     * The fraction of lookups for a key already in the map.
+     */
+    @Param({"0.0", "0.5", "0.9", "1.0"})
+    private double hitRatio;
+
+    /**
+     * The map under test for {@link DefaultHashMap#get(Object)}.
+     */
+    private DefaultHashMap<Integer, List<Integer>> defaultHashMap;
+
+    /**
+     * The map under test for {@link HashMap#computeIfAbsent}.
+     */
+    private HashMap<Integer, List<Integer>> hashMap;
+
+    /**
+     * The lookup keys: a key lower than {@link #size} is a hit, otherwise is a miss.
+     */
+    private Integer[] keys;
+
+    /**
+     * The index of the next lookup key.
+     */
+    private int index;
+
+    /**
+     * Fill the maps with {@link #size} keys and precompute the lookup keys.
+     */
+    @Setup
+    public void setUp() {
+        defaultHashMap = new DefaultHashMap<>(ArrayList::new);
+        hashMap = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            defaultHashMap.put(i, new ArrayList<>());
+            hashMap.put(i, new ArrayList<>());
+        }
+
+        Random random = new Random(42L);
+        keys = new Integer[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int key = random.nextInt(size);
+            keys[i] = random.nextDouble() < hitRatio ? key : size + key;
+        }
+    }
+
+    /**
+     * @return the value for the next lookup key.
+     */
+    @Benchmark
+    public List<Integer> defaultHashMapGet() {
+        return lookup(defaultHashMap, nextKey(), true);
+    }
+
+    /**
+     * @return the value for the next lookup key.
+     */
+    @Benchmark
+    public List<Integer> hashMapComputeIfAbsent() {
+        return lookup(hashMap, nextKey(), false);
+    }
+
+    /**
+     * @return the value for the next lookup key.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public List<Integer> defaultHashMapGetMultiThreaded() {
+        return lookup(defaultHashMap, nextKey(), true);
+    }
+
+    /**
+     * @return the value for the next lookup key.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public List<Integer> hashMapComputeIfAbsentMultiThreaded() {
+        return lookup(hashMap, nextKey(), false);
+    }
+
+    /**
+     * @return the next lookup key.
+     */
+    private Integer nextKey() {
+        Integer key = keys[index];
+        index = (index + 1) & (LOOKUPS - 1);
+        return key;
+    }
+
+    /**
+     * @param map the map to lookup.
+     * @param key the key to lookup.
+     * @param useGet whether to use {@link Map#get(Object)} or {@link Map#computeIfAbsent}.
+     * @return the value for the key.
+     */
+    private List<Integer> lookup(final Map<Integer, List<Integer>> map, final Integer key, final boolean useGet) {
+        List<Integer> value = useGet ? map.get(key) : map.computeIfAbsent(key, k -> new ArrayList<>());
+        if (key >= size) {
+            map.remove(key);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Package contains the benchmarks of the Guavaberry collections.
+ */
+package org.guavaberry.benchmarks.collections;
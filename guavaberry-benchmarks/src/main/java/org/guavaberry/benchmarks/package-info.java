@@ -0,0 +1,4 @@
+/**
+ * Package contains the tools for running and comparing the Guavaberry benchmarks.
+ */
+package org.guavaberry.benchmarks;
@@ -0,0 +1,127 @@
+package org.guavaberry.benchmarks.retryer;
+
+import com.github.rholder.retry.Attempt;
+import org.guavaberry.retryer.AdaptiveWaitStrategy;
+import org.guavaberry.retryer.WaitStrategies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a retry cycle of {@link AdaptiveWaitStrategy}: a failure followed by a success.
+ *
+ * <p>A failure alone doubles the shared delay, which would stay at the max timeout after a few operations and
+ * measure only the saturated path. Alternating failures and successes keeps the delay between the base
+ * timeout and twice the base timeout, and the strategy is created again for each iteration.
+ *
+ * <p>The attempt number is ignored by the strategy, so it is not a parameter of the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdaptiveWaitStrategyBenchmark {
+    /**
+     * The number of threads of the multi threaded benchmarks.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * The failed attempt passed to the wait strategy.
+     */
+    private static final Attempt<Void> ATTEMPT = new FailedAttempt();
+
+    /**
+     * The wait strategy under test.
+     */
+    private AdaptiveWaitStrategy waitStrategy;
+
+    /**
+     * Create the wait strategy with the delay at the base timeout.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        waitStrategy = WaitStrategies.adaptiveJitterWait(Duration.ofMillis(100L), Duration.ofMinutes(1L));
+    }
+
+    /**
+     * @return the calculated wait time in milliseconds.
+     */
+    @Benchmark
+    public long retryCycle() {
+        long waitTime = waitStrategy.computeSleepTime(ATTEMPT);
+        waitStrategy.onSuccess();
+        return waitTime;
+    }
+
+    /**
+     * @return the calculated wait time in milliseconds.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public long retryCycleMultiThreaded() {
+        long waitTime = waitStrategy.computeSleepTime(ATTEMPT);
+        waitStrategy.onSuccess();
+        return waitTime;
+    }
+
+    /**
+     * A failed attempt, the first one.
+     */
+    private static final class FailedAttempt implements Attempt<Void> {
+        /**
+         * The exception of the failed attempt.
+         */
+        private static final ExecutionException FAILURE = new ExecutionException("benchmark failure", null);
+
+        @Override
+        public Void get() throws ExecutionException {
+            throw FAILURE;
+        }
+
+        @Override
+        public boolean hasResult() {
+            return false;
+        }
+
+        @Override
+        public boolean hasException() {
+            return true;
+        }
+
+        @Override
+        public Void getResult() throws IllegalStateException {
+            throw new IllegalStateException("The attempt resulted in an exception, not in a result");
+        }
+
+        @Override
+        public Throwable getExceptionCause() throws IllegalStateException {
+            return FAILURE;
+        }
+
+        @Override
+        public long getAttemptNumber() {
+            return 1L;
+        }
+
+        @Override
+        public long getDelaySinceFirstAttempt() {
+            return 0L;
+        }
+    }
+}
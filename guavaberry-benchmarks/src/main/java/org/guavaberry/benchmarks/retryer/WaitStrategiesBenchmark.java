@@ -0,0 +1,164 @@
+package org.guavaberry.benchmarks.retryer;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.WaitStrategy;
+import org.guavaberry.retryer.WaitStrategies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link WaitStrategy#computeSleepTime(Attempt)} for the stateless strategies of
+ * {@link WaitStrategies}, whose wait depends on the attempt number.
+ *
+ * <p>The strategy is shared among the threads, as it would be by the retryers of an application.
+ * Run with {@code -prof gc} to measure the allocation rate too.
+ *
+ * @see AdaptiveWaitStrategyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaitStrategiesBenchmark {
+    /**
+     * The number of threads of the multi threaded benchmarks.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * The name of the factory method of {@link WaitStrategies}.
+     */
+    @Param({"exponentialWait", "exponentialJitterWait", "compositeJitterWait"})
+    private String strategy;
+
+    /**
+     * The number of the failed attempt.
+     */
+    @Param({"1", "10"})
+    private long attemptNumber;
+
+    /**
+     * The wait strategy under test.
+     */
+    private WaitStrategy waitStrategy;
+
+    /**
+     * The failed attempt passed to the wait strategy.
+     */
+    private Attempt<Void> attempt;
+
+    /**
+     * Create the wait strategy and the failed attempt.
+     */
+    @Setup
+    public void setUp() {
+        Duration baseTimeout = Duration.ofMillis(100L);
+        Duration maxTimeout = Duration.ofMinutes(1L);
+        switch (strategy) {
+            case "exponentialWait":
+                waitStrategy = WaitStrategies.exponentialWait(baseTimeout, maxTimeout);
+                break;
+            case "exponentialJitterWait":
+                waitStrategy = WaitStrategies.exponentialJitterWait(baseTimeout, maxTimeout);
+                break;
+            case "compositeJitterWait":
+                // Wrapping a strategy that depends on the attempt number, so that the attemptNumber param matters
+                waitStrategy = WaitStrategies.compositeJitterWait(
+                        WaitStrategies.exponentialWait(baseTimeout, maxTimeout), 0.5D);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + strategy);
+        }
+        attempt = new FailedAttempt(attemptNumber);
+    }
+
+    /**
+     * @return the calculated wait time in milliseconds.
+     */
+    @Benchmark
+    public long computeSleepTime() {
+        return waitStrategy.computeSleepTime(attempt);
+    }
+
+    /**
+     * @return the calculated wait time in milliseconds.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public long computeSleepTimeMultiThreaded() {
+        return waitStrategy.computeSleepTime(attempt);
+    }
+
+    /**
+     * A failed attempt with a fixed attempt number.
+     */
+    private static final class FailedAttempt implements Attempt<Void> {
+        /**
+         * The exception of the failed attempt.
+         */
+        private static final ExecutionException FAILURE = new ExecutionException("benchmark failure", null);
+
+        /**
+         * The number of the attempt.
+         */
+        private final long attemptNumber;
+
+        /**
+         * @param attemptNumber the number of the attempt.
+         */
+        FailedAttempt(final long attemptNumber) {
+            this.attemptNumber = attemptNumber;
+        }
+
+        @Override
+        public Void get() throws ExecutionException {
+            throw FAILURE;
+        }
+
+        @Override
+        public boolean hasResult() {
+            return false;
+        }
+
+        @Override
+        public boolean hasException() {
+            return true;
+        }
+
+        @Override
+        public Void getResult() throws IllegalStateException {
+            throw new IllegalStateException("The attempt resulted in an exception, not in a result");
+        }
+
+        @Override
+        public Throwable getExceptionCause() throws IllegalStateException {
+            return FAILURE;
+        }
+
+        @Override
+        public long getAttemptNumber() {
+            return attemptNumber;
+        }
+
+        @Override
+        public long getDelaySinceFirstAttempt() {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Package contains the benchmarks of the Guavaberry retryer.
+ */
+package org.guavaberry.benchmarks.retryer;
@@ -0,0 +1,187 @@
+package org.guavaberry.retryer;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.WaitStrategy;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link WaitStrategy} whose delay adapts to the observed health of a dependency
+ * following the AIMD (additive increase, multiplicative decrease) scheme applied to the retry rate:
+ * since the rate is the inverse of the delay, the delay is multiplied on failure and reduced by
+ * a constant step on success.
+ *
+ * <p>Unlike the strategies in {@link WaitStrategies}, which are functions of the attempt number only,
+ * this strategy holds a current delay that is meant to be shared among all the
+ * {@link com.github.rholder.retry.Retryer} instances calling the same dependency:
+ * <ul>
+ *   <li>every failure multiplies the current delay by the increase factor, rounding up and increasing it by
+ *   at least one millisecond, capped to the max timeout;</li>
+ *   <li>every success subtracts the decrease step from the current delay, floored to the base timeout;</li>
+ *   <li>a success whose latency is above the latency threshold is considered a congestion signal and
+ *   increases the delay as a failure does.</li>
+ * </ul>
+ *
+ * <p>Failures are recorded automatically by {@link #computeSleepTime(Attempt)}, since the retryer invokes it
+ * only for failed attempts. Successes must be reported via {@link #onSuccess()} or {@link #onSuccess(Duration)}.
+ *
+ * <p>The returned wait time has the same jitter semantics of
+ * {@link WaitStrategies#compositeJitterWait(WaitStrategy, double)}, with the current delay as wait time:
+ * {@code
+ *   min_value = current_delay * (1 - randomization_factor)
+ *   max_value = current_delay
+ * }
+ *
+ * <p>An example on how to use {@link AdaptiveWaitStrategy}:
+ * <pre>
+ * {@code
+ *     AdaptiveWaitStrategy waitStrategy = WaitStrategies.adaptiveJitterWait(Duration.ofMillis(100L),
+ *                                                                           Duration.ofSeconds(30L));
+ *     Retryer<String> retryer = RetryerBuilder.<String>newBuilder()
+ *             .retryIfException()
+ *             .withWaitStrategy(waitStrategy)
+ *             .build();
+ *     String result = retryer.call(callable);
+ *     waitStrategy.onSuccess();
+ * }
+ * </pre>
+ *
+ * <p>The state is held in a single {@link AtomicLong} and is updated without locks.
+ *
+ * @see WaitStrategies#adaptiveJitterWait(Duration, Duration, double, Duration, Duration, double)
+ */
+@ThreadSafe
+public final class AdaptiveWaitStrategy implements WaitStrategy {
+    /**
+     * The lower bound of the current delay in milliseconds.
+     */
+    private final long baseTimeout;
+
+    /**
+     * The upper bound of the current delay in milliseconds.
+     */
+    private final long maxTimeout;
+
+    /**
+     * The factor the current delay is multiplied by on each failure.
+     */
+    private final double increaseFactor;
+
+    /**
+     * The amount in milliseconds the current delay is decreased by on each success.
+     */
+    private final long decreaseStep;
+
+    /**
+     * The latency in milliseconds above which a success is considered a congestion signal.
+     */
+    private final long latencyThreshold;
+
+    /**
+     * The wait strategy that applies the jitter around the current delay.
+     */
+    private final WaitStrategy jitterWaitStrategy;
+
+    /**
+     * The current delay in milliseconds shared among all the callers.
+     */
+    private final AtomicLong currentDelay;
+
+    /**
+     * Construct an instance of {@link AdaptiveWaitStrategy}.
+     *
+     * @param baseTimeout the initial and minimum delay, at least one millisecond since a zero delay
+     *                    would never increase.
+     * @param maxTimeout the delay will be capped to this value.
+     * @param increaseFactor the factor the delay is multiplied by on each failure.
+     * @param decreaseStep the amount the delay is decreased by on each success.
+     * @param latencyThreshold the latency above which a success increases the delay.
+     * @param randomizationFactor the randomization factor for creating a range around the delay.
+     * @param random the random generator used for the jitter.
+     */
+    AdaptiveWaitStrategy(final Duration baseTimeout, final Duration maxTimeout, final double increaseFactor,
+                         final Duration decreaseStep, final Duration latencyThreshold,
+                         final double randomizationFactor, final Random random) {
+        Objects.requireNonNull(baseTimeout, "The base timeout may not be null");
+        Objects.requireNonNull(maxTimeout, "The maximum timeout may not be null");
+        Objects.requireNonNull(decreaseStep, "The decrease step may not be null");
+        Objects.requireNonNull(latencyThreshold, "The latency threshold may not be null");
+        Preconditions.checkArgument(baseTimeout.toMillis() > 0L, "baseTimeout must be > 0 but is %s", baseTimeout);
+        Preconditions.checkArgument(maxTimeout.toMillis() >= baseTimeout.toMillis(),
+                                    "maxTimeout must be >= baseTimeout but is %s", maxTimeout);
+        Preconditions.checkArgument(increaseFactor >= 1.0D, "increaseFactor must be >= 1.0 but is %s",
+                                    increaseFactor);
+        Preconditions.checkArgument(decreaseStep.toMillis() >= 0L, "decreaseStep must be >= 0 but is %s",
+                                    decreaseStep);
+        Preconditions.checkArgument(latencyThreshold.toMillis() >= 0L, "latencyThreshold must be >= 0 but is %s",
+                                    latencyThreshold);
+        this.baseTimeout = baseTimeout.toMillis();
+        this.maxTimeout = maxTimeout.toMillis();
+        this.increaseFactor = increaseFactor;
+        this.decreaseStep = decreaseStep.toMillis();
+        this.latencyThreshold = latencyThreshold.toMillis();
+        this.currentDelay = new AtomicLong(this.baseTimeout);
+        this.jitterWaitStrategy = WaitStrategies.compositeJitterWait(attempt -> currentDelay.get(),
+                                                                     randomizationFactor, random);
+    }
+
+    /**
+     * Compute the wait time around the current delay and record the failure.
+     *
+     * @param failedAttempt the current failed attempt.
+     * @return the calculated wait time in milliseconds.
+     */
+    @Override
+    public long computeSleepTime(final Attempt failedAttempt) {
+        Objects.requireNonNull(failedAttempt, "The failedAttempt may not be null");
+        long waitTime = jitterWaitStrategy.computeSleepTime(failedAttempt);
+        onFailure();
+        return waitTime;
+    }
+
+    /**
+     * Record a failure: the current delay is multiplied by the increase factor. The result is rounded up and
+     * is at least one millisecond longer, otherwise a small delay with a small factor would never grow.
+     *
+     * <p>There is no need to call this method for the attempts handled by a
+     * {@link com.github.rholder.retry.Retryer} since {@link #computeSleepTime(Attempt)} already does.
+     */
+    public void onFailure() {
+        currentDelay.updateAndGet(delay -> delay >= maxTimeout ? maxTimeout
+                : Math.min(maxTimeout, Math.max(delay + 1L, (long) Math.ceil(delay * increaseFactor))));
+    }
+
+    /**
+     * Record a success: the current delay is decreased by the decrease step.
+     */
+    public void onSuccess() {
+        currentDelay.updateAndGet(delay -> Math.max(baseTimeout, delay - decreaseStep));
+    }
+
+    /**
+     * Record a success taking into account its latency. If the latency is above the latency threshold
+     * the success is considered a congestion signal and it is recorded as a failure.
+     *
+     * @param latency the time taken by the successful call.
+     */
+    public void onSuccess(final Duration latency) {
+        Objects.requireNonNull(latency, "The latency may not be null");
+        if (latency.toMillis() > latencyThreshold) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    /**
+     * @return the current delay before applying the jitter.
+     */
+    public Duration getCurrentDelay() {
+        return Duration.ofMillis(currentDelay.get());
+    }
+}
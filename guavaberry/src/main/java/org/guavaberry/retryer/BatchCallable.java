@@ -0,0 +1,23 @@
+package org.guavaberry.retryer;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Operation that processes a batch of items and reports which of them failed.
+ *
+ * <p>Used by {@link BatchRetryer} to retry only the failed items of a batch.
+ *
+ * @param <T> type of the items of the batch
+ */
+public interface BatchCallable<T> {
+
+    /**
+     * Process the given batch. If the method throws an exception every item of the batch is considered failed.
+     *
+     * @param items the items of the batch
+     * @return the positions of the failed items in {@code items}, an empty {@link BitSet} if all of them succeeded
+     * @throws Exception if the whole batch failed
+     */
+    BitSet call(List<T> items) throws Exception;
+}
@@ -0,0 +1,420 @@
+package org.guavaberry.retryer;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.StopStrategy;
+import com.github.rholder.retry.WaitStrategy;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retryer for batch operations that retries only the failed items of a batch.
+ *
+ * <p>Retrying a whole batch whenever some of its items fail resends the items that already succeeded and
+ * multiplies the load on the remote server. {@link BatchRetryer} instead re-queues only the items reported as
+ * failed by the {@link BatchCallable}, each one with its own attempt number, and gives up on an item when the
+ * {@link StopStrategy} says so.
+ *
+ * <p>The time is divided in ticks. The items due at the same tick, coming from any of the submitted batches,
+ * are coalesced into a single outgoing batch (split into chunks of at most {@code maxBatchSize} items), so the
+ * number of calls to the {@link BatchCallable} depends on the number of ticks and not on the number of items.
+ *
+ * <p>The wait between two attempts is computed by a {@link WaitStrategy}, such as
+ * {@link WaitStrategies#exponentialJitterWait()}, according to the {@link WaitMode}:
+ * <ul>
+ *   <li>{@link WaitMode#PER_ITEM}: the wait is computed for each failed item, so that the jitter spreads the
+ *   items along several ticks;</li>
+ *   <li>{@link WaitMode#PER_BATCH}: the wait is computed once for all the failed items of an outgoing batch,
+ *   using the highest attempt number among them, so that they are retried together.</li>
+ * </ul>
+ *
+ * <p>The executor both schedules the ticks and runs the {@link BatchCallable}: every outgoing batch is a task of
+ * its own, so a slow call delays the following ticks only when all the threads of the executor are busy. Size
+ * the executor for the number of concurrent calls the remote server should receive, as a single thread sends
+ * the outgoing batches one at a time.
+ *
+ * <p>An example on how to use {@link BatchRetryer}:
+ * <pre>
+ * {@code
+ *     BatchRetryer<Record> retryer = new BatchRetryer<>(records -> client.putRecords(records).failedPositions(),
+ *                                                       WaitStrategies.exponentialJitterWait(),
+ *                                                       StopStrategies.stopAfterAttempt(5),
+ *                                                       Executors.newScheduledThreadPool(4));
+ *     List<Record> givenUp = retryer.submit(records).get();
+ * }
+ * </pre>
+ *
+ * @param <T> type of the items of the batches
+ *
+ * @see BatchCallable
+ */
+@ThreadSafe
+public final class BatchRetryer<T> {
+    /**
+     * How the wait strategy is applied to the failed items.
+     */
+    public enum WaitMode {
+        /**
+         * The wait is computed once for all the failed items of a batch.
+         */
+        PER_BATCH,
+        /**
+         * The wait is computed for each failed item.
+         */
+        PER_ITEM
+    }
+
+    /**
+     * The default tick (10 milliseconds).
+     */
+    private static final Duration DEFAULT_TICK = Duration.ofMillis(10L);
+
+    /**
+     * The batch operation.
+     */
+    private final BatchCallable<T> callable;
+
+    /**
+     * The strategy for the wait between two attempts.
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * The strategy for giving up on an item.
+     */
+    private final StopStrategy stopStrategy;
+
+    /**
+     * How the wait strategy is applied to the failed items.
+     */
+    private final WaitMode waitMode;
+
+    /**
+     * The tick in milliseconds.
+     */
+    private final long tick;
+
+    /**
+     * The max number of items of an outgoing batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The executor for the ticks and the calls to the batch operation.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The items waiting for being sent, grouped by tick.
+     */
+    private final ConcurrentHashMap<Long, List<Entry<T>>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Construct an instance of {@link BatchRetryer} that computes the wait for each item,
+     * with the default tick (10 milliseconds) and no limit on the size of the outgoing batches.
+     *
+     * @param callable the batch operation.
+     * @param waitStrategy the strategy for the wait between two attempts.
+     * @param stopStrategy the strategy for giving up on an item.
+     * @param executor the executor for the ticks and the calls to the batch operation.
+     */
+    public BatchRetryer(final BatchCallable<T> callable, final WaitStrategy waitStrategy,
+                        final StopStrategy stopStrategy, final ScheduledExecutorService executor) {
+        this(callable, waitStrategy, stopStrategy, WaitMode.PER_ITEM, DEFAULT_TICK, Integer.MAX_VALUE, executor);
+    }
+
+    /**
+     * Construct an instance of {@link BatchRetryer}.
+     *
+     * @param callable the batch operation.
+     * @param waitStrategy the strategy for the wait between two attempts.
+     * @param stopStrategy the strategy for giving up on an item.
+     * @param waitMode how the wait strategy is applied to the failed items.
+     * @param tick the items due within the same tick are sent in the same batch.
+     * @param maxBatchSize the max number of items of an outgoing batch.
+     * @param executor the executor for the ticks and the calls to the batch operation.
+     */
+    public BatchRetryer(final BatchCallable<T> callable, final WaitStrategy waitStrategy,
+                        final StopStrategy stopStrategy, final WaitMode waitMode, final Duration tick,
+                        final int maxBatchSize, final ScheduledExecutorService executor) {
+        Objects.requireNonNull(callable, "The batch callable may not be null");
+        Objects.requireNonNull(waitStrategy, "The wait strategy may not be null");
+        Objects.requireNonNull(stopStrategy, "The stop strategy may not be null");
+        Objects.requireNonNull(waitMode, "The wait mode may not be null");
+        Objects.requireNonNull(tick, "The tick may not be null");
+        Objects.requireNonNull(executor, "The executor may not be null");
+        Preconditions.checkArgument(tick.toMillis() > 0L, "tick must be > 0 but is %s", tick);
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0 but is %s", maxBatchSize);
+        this.callable = callable;
+        this.waitStrategy = waitStrategy;
+        this.stopStrategy = stopStrategy;
+        this.waitMode = waitMode;
+        this.tick = tick.toMillis();
+        this.maxBatchSize = maxBatchSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Submit a batch. The items are sent at the next tick, together with the items of the other batches
+     * due at the same tick.
+     *
+     * @param items the items of the batch.
+     * @return a future completed when every item either succeeded or was given up, holding the given up items.
+     */
+    public CompletableFuture<List<T>> submit(final List<T> items) {
+        Objects.requireNonNull(items, "The items may not be null");
+        Batch<T> batch = new Batch<>(items.size(), System.currentTimeMillis());
+        if (items.isEmpty()) {
+            batch.future.complete(Collections.emptyList());
+            return batch.future;
+        }
+        List<Entry<T>> entries = new ArrayList<>(items.size());
+        for (T item : items) {
+            entries.add(new Entry<>(item, batch));
+        }
+        long now = System.currentTimeMillis();
+        schedule(dueTick(now, 0L), entries, now);
+        return batch.future;
+    }
+
+    /**
+     * @param now the current time in milliseconds.
+     * @param delay the delay in milliseconds.
+     * @return the tick the entries delayed by {@code delay} are due at.
+     */
+    private long dueTick(final long now, final long delay) {
+        return ceilDiv(now + Math.min(Math.max(delay, 0L), Long.MAX_VALUE - now), tick);
+    }
+
+    /**
+     * Add the entries to the bucket of the tick they are due at, scheduling the bucket if it is a new one.
+     *
+     * @param dueTick the tick the entries are due at.
+     * @param entries the entries to send.
+     * @param now the current time in milliseconds.
+     */
+    private void schedule(final long dueTick, final List<Entry<T>> entries, final long now) {
+        pending.compute(dueTick, (key, bucket) -> {
+            List<Entry<T>> result = bucket;
+            if (result == null) {
+                result = new ArrayList<>(entries.size());
+                executor.schedule(() -> flush(key), Math.max(0L, key * tick - now), TimeUnit.MILLISECONDS);
+            }
+            result.addAll(entries);
+            return result;
+        });
+    }
+
+    /**
+     * Send the entries due at the given tick, split into chunks of at most {@link #maxBatchSize} items,
+     * each one in a task of its own so that a slow call does not hold the tick.
+     *
+     * @param dueTick the tick.
+     */
+    private void flush(final long dueTick) {
+        List<Entry<T>> entries = pending.remove(dueTick);
+        for (int from = 0; from < entries.size(); from += maxBatchSize) {
+            List<Entry<T>> chunk = entries.subList(from, Math.min(entries.size(), from + maxBatchSize));
+            try {
+                executor.execute(() -> send(chunk));
+            } catch (RuntimeException e) {
+                fail(chunk, e);
+            }
+        }
+    }
+
+    /**
+     * Send a batch and re-schedule its failed entries.
+     *
+     * @param entries the entries to send.
+     */
+    private void send(final List<Entry<T>> entries) {
+        List<T> items = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            items.add(entry.item);
+        }
+
+        BitSet failed;
+        Throwable cause = null;
+        try {
+            failed = Objects.requireNonNull(callable.call(items), "The batch callable returned null");
+        } catch (Exception e) {
+            failed = new BitSet(entries.size());
+            failed.set(0, entries.size());
+            cause = e;
+        } catch (Error e) {
+            fail(entries, e);
+            throw e;
+        }
+
+        try {
+            retry(entries, failed, cause);
+        } catch (RuntimeException | Error e) {
+            // A failing wait or stop strategy, or a rejecting executor, must not leave the batches pending forever
+            fail(entries, e);
+            if (e instanceof Error) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Complete exceptionally the batches of the given entries.
+     *
+     * @param entries the entries that cannot be sent or retried.
+     * @param cause the reason.
+     * @param <T> type of the items.
+     */
+    private static <T> void fail(final List<Entry<T>> entries, final Throwable cause) {
+        for (Entry<T> entry : entries) {
+            entry.batch.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Complete the succeeded entries and re-schedule or give up the failed ones.
+     *
+     * @param entries the sent entries.
+     * @param failed the positions of the failed entries.
+     * @param cause the exception thrown by the batch callable or null.
+     */
+    private void retry(final List<Entry<T>> entries, final BitSet failed, final Throwable cause) {
+        long now = System.currentTimeMillis();
+        List<Entry<T>> retries = new ArrayList<>(failed.cardinality());
+        // The failed entries are grouped by tick first, so that each bucket is updated once and not once per item
+        Map<Long, List<Entry<T>>> retriesByTick = new HashMap<>();
+        long maxAttempt = 0L;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<T> entry = entries.get(i);
+            if (!failed.get(i)) {
+                entry.batch.done();
+                continue;
+            }
+            Attempt<T> attempt = new FailedAttempt<>(entry.attempt, now - entry.batch.start, cause);
+            if (stopStrategy.shouldStop(attempt)) {
+                entry.batch.giveUp(entry.item);
+            } else if (waitMode == WaitMode.PER_ITEM) {
+                entry.attempt++;
+                long dueTick = dueTick(now, waitStrategy.computeSleepTime(attempt));
+                retriesByTick.computeIfAbsent(dueTick, key -> new ArrayList<>()).add(entry);
+            } else {
+                maxAttempt = Math.max(maxAttempt, entry.attempt);
+                entry.attempt++;
+                retries.add(entry);
+            }
+        }
+        if (!retries.isEmpty()) {
+            long delay = waitStrategy.computeSleepTime(new FailedAttempt<>(maxAttempt, 0L, cause));
+            retriesByTick.put(dueTick(now, delay), retries);
+        }
+        retriesByTick.forEach((dueTick, bucket) -> schedule(dueTick, bucket, now));
+    }
+
+    /**
+     * @param dividend the dividend.
+     * @param divisor the divisor.
+     * @return the quotient rounded towards positive infinity.
+     */
+    private static long ceilDiv(final long dividend, final long divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+
+    /**
+     * A submitted batch.
+     *
+     * @param <T> type of the items of the batch
+     */
+    private static final class Batch<T> {
+        /**
+         * The number of items neither succeeded nor given up yet.
+         */
+        private final AtomicInteger remaining;
+
+        /**
+         * The time of submission in milliseconds.
+         */
+        private final long start;
+
+        /**
+         * The given up items.
+         */
+        private final Queue<T> givenUp = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The future completed when there are no remaining items.
+         */
+        private final CompletableFuture<List<T>> future = new CompletableFuture<>();
+
+        /**
+         * @param size the number of items of the batch.
+         * @param start the time of submission in milliseconds.
+         */
+        Batch(final int size, final long start) {
+            this.remaining = new AtomicInteger(size);
+            this.start = start;
+        }
+
+        /**
+         * @param item the given up item.
+         */
+        void giveUp(final T item) {
+            givenUp.add(item);
+            done();
+        }
+
+        /**
+         * Record that an item either succeeded or was given up.
+         */
+        void done() {
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(new ArrayList<>(givenUp));
+            }
+        }
+    }
+
+    /**
+     * An item waiting for being sent.
+     *
+     * @param <T> type of the item
+     */
+    private static final class Entry<T> {
+        /**
+         * The item.
+         */
+        private final T item;
+
+        /**
+         * The batch the item was submitted with.
+         */
+        private final Batch<T> batch;
+
+        /**
+         * The number of the next attempt.
+         */
+        private long attempt = 1L;
+
+        /**
+         * @param item the item.
+         * @param batch the batch the item was submitted with.
+         */
+        Entry(final T item, final Batch<T> batch) {
+            this.item = item;
+            this.batch = batch;
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package org.guavaberry.retryer;
+
+import com.github.rholder.retry.StopStrategy;
+import com.github.rholder.retry.WaitStrategy;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker that makes the calls to an unhealthy dependency fail fast.
+ *
+ * <p>When a dependency is down, a retryer using {@link WaitStrategies#exponentialJitterWait()} still lets every
+ * caller run its full retry sequence, holding threads and sockets for nothing. The circuit breaker stops the
+ * calls as soon as the failure rate of the dependency is too high and lets a few probes through from time to
+ * time to detect its recovery.
+ *
+ * <p>The circuit breaker has three states:
+ * <ul>
+ *   <li>{@link State#CLOSED}: the calls are permitted and their outcomes are recorded in a sliding window of the
+ *   last {@code windowSize} calls. Once at least {@code minimumNumberOfCalls} calls are recorded, the circuit
+ *   breaker opens whenever the failure rate of the window reaches {@code failureRateThreshold};</li>
+ *   <li>{@link State#OPEN}: the calls fail fast with {@link CircuitBreakerOpenException}. After a wait computed by
+ *   the {@link WaitStrategy}, the circuit breaker becomes half open;</li>
+ *   <li>{@link State#HALF_OPEN}: up to {@code permittedProbes} calls are permitted. If all of them succeed the
+ *   circuit breaker closes, if any of them fails the circuit breaker opens again. If they have not all reported
+ *   their outcome within {@code probeTimeout}, the circuit breaker opens again when some of them are still
+ *   unreported and closes when all the reported ones succeeded.</li>
+ * </ul>
+ *
+ * <p>A permitted call gets a {@link Permit} bound to the state that permitted it, and its outcome is recorded
+ * only in that state: the late outcome of a call permitted before a transition does not affect the new state,
+ * so for instance a slow call started while closed cannot count as a successful probe.
+ *
+ * <p>The wait before becoming half open is computed by the given {@link WaitStrategy} using the number of
+ * consecutive openings as attempt number, so that using for instance {@link WaitStrategies#exponentialJitterWait()}
+ * the recovery probes are spread with the same exponential and randomized interval of the retries.
+ *
+ * <p>The state machine is lock-free: every transition replaces the snapshot of the current state with
+ * compare-and-set and the sliding window is a fixed ring buffer of atomic integers. When several threads race
+ * to open the circuit breaker, only the one winning the compare-and-set invokes the {@link WaitStrategy}, so
+ * that a stateful strategy such as {@link AdaptiveWaitStrategy} sees exactly one call per opening.
+ *
+ * <p>An example on how to use {@link CircuitBreaker} together with a {@link com.github.rholder.retry.Retryer}:
+ * <pre>
+ * {@code
+ *     CircuitBreaker breaker = new CircuitBreaker(WaitStrategies.exponentialJitterWait(Duration.ofMinutes(1L)));
+ *     Retryer<String> retryer = RetryerBuilder.<String>newBuilder()
+ *             .retryIfException()
+ *             .withWaitStrategy(WaitStrategies.exponentialJitterWait())
+ *             .withStopStrategy(breaker.stopIfOpen(StopStrategies.stopAfterAttempt(5)))
+ *             .build();
+ *     String result = retryer.call(() -> breaker.call(callable));
+ * }
+ * </pre>
+ *
+ * @see WaitStrategies
+ */
+@ThreadSafe
+public final class CircuitBreaker {
+    /**
+     * The states of the circuit breaker.
+     */
+    public enum State {
+        /**
+         * The calls are permitted.
+         */
+        CLOSED,
+        /**
+         * The calls fail fast.
+         */
+        OPEN,
+        /**
+         * A limited number of probe calls are permitted.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The default failure rate threshold (0.5).
+     */
+    private static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5D;
+
+    /**
+     * The default size of the sliding window (100 calls).
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 100;
+
+    /**
+     * The default minimum number of calls before computing the failure rate (20 calls).
+     */
+    private static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 20;
+
+    /**
+     * The default number of probes permitted in half open state (5 calls).
+     */
+    private static final int DEFAULT_PERMITTED_PROBES = 5;
+
+    /**
+     * The default time for the probes to succeed in half open state (1 minute).
+     */
+    private static final Duration DEFAULT_PROBE_TIMEOUT = Duration.ofMinutes(1L);
+
+    /**
+     * The max wait in open state in nanoseconds (about 146 years).
+     */
+    private static final long MAX_WAIT_NANOS = Long.MAX_VALUE / 2L;
+
+    /**
+     * The failure rate at which the circuit breaker opens.
+     */
+    private final double failureRateThreshold;
+
+    /**
+     * The number of calls of the sliding window.
+     */
+    private final int windowSize;
+
+    /**
+     * The minimum number of calls recorded before computing the failure rate.
+     */
+    private final int minimumNumberOfCalls;
+
+    /**
+     * The number of probes permitted in half open state.
+     */
+    private final int permittedProbes;
+
+    /**
+     * The time in nanoseconds for the probes to succeed in half open state.
+     */
+    private final long probeTimeout;
+
+    /**
+     * The strategy for the wait before becoming half open.
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * The monotonic clock in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The current state.
+     */
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * Construct an instance of {@link CircuitBreaker} with the default failure rate threshold (0.5),
+     * the default window size (100 calls), the default minimum number of calls (20 calls), the
+     * default number of permitted probes (5 calls) and the default probe timeout (1 minute).
+     *
+     * @param waitStrategy the strategy for the wait before becoming half open.
+     */
+    public CircuitBreaker(final WaitStrategy waitStrategy) {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_NUMBER_OF_CALLS,
+             DEFAULT_PERMITTED_PROBES, waitStrategy);
+    }
+
+    /**
+     * Construct an instance of {@link CircuitBreaker} with the default probe timeout (1 minute).
+     *
+     * @param failureRateThreshold the failure rate at which the circuit breaker opens, in the interval (0.0, 1.0].
+     * @param windowSize the number of calls of the sliding window.
+     * @param minimumNumberOfCalls the minimum number of calls recorded before computing the failure rate.
+     * @param permittedProbes the number of probes permitted in half open state.
+     * @param waitStrategy the strategy for the wait before becoming half open.
+     */
+    public CircuitBreaker(final double failureRateThreshold, final int windowSize, final int minimumNumberOfCalls,
+                          final int permittedProbes, final WaitStrategy waitStrategy) {
+        this(failureRateThreshold, windowSize, minimumNumberOfCalls, permittedProbes, DEFAULT_PROBE_TIMEOUT,
+             waitStrategy);
+    }
+
+    /**
+     * Construct an instance of {@link CircuitBreaker}.
+     *
+     * @param failureRateThreshold the failure rate at which the circuit breaker opens, in the interval (0.0, 1.0].
+     * @param windowSize the number of calls of the sliding window.
+     * @param minimumNumberOfCalls the minimum number of calls recorded before computing the failure rate.
+     * @param permittedProbes the number of probes permitted in half open state.
+     * @param probeTimeout the time for the probes to report their outcome in half open state: after it the
+     *                     circuit breaker opens again if some probe is still unreported, so that probes whose
+     *                     outcome is never reported cannot hold it half open, and closes otherwise.
+     * @param waitStrategy the strategy for the wait before becoming half open.
+     */
+    public CircuitBreaker(final double failureRateThreshold, final int windowSize, final int minimumNumberOfCalls,
+                          final int permittedProbes, final Duration probeTimeout, final WaitStrategy waitStrategy) {
+        this(failureRateThreshold, windowSize, minimumNumberOfCalls, permittedProbes, probeTimeout, waitStrategy,
+             System::nanoTime);
+    }
+
+    /**
+     * Construct an instance of {@link CircuitBreaker} with the given clock.
+     *
+     * @param failureRateThreshold the failure rate at which the circuit breaker opens, in the interval (0.0, 1.0].
+     * @param windowSize the number of calls of the sliding window.
+     * @param minimumNumberOfCalls the minimum number of calls recorded before computing the failure rate.
+     * @param permittedProbes the number of probes permitted in half open state.
+     * @param probeTimeout the time for the probes to report their outcome in half open state.
+     * @param waitStrategy the strategy for the wait before becoming half open.
+     * @param clock the monotonic clock in nanoseconds.
+     */
+    CircuitBreaker(final double failureRateThreshold, final int windowSize, final int minimumNumberOfCalls,
+                   final int permittedProbes, final Duration probeTimeout, final WaitStrategy waitStrategy,
+                   final LongSupplier clock) {
+        Objects.requireNonNull(probeTimeout, "The probe timeout may not be null");
+        Objects.requireNonNull(waitStrategy, "The wait strategy may not be null");
+        Objects.requireNonNull(clock, "The clock may not be null");
+        Preconditions.checkArgument(failureRateThreshold > 0.0D && failureRateThreshold <= 1.0D,
+                                    "failureRateThreshold must be in (0.0, 1.0] but is %s", failureRateThreshold);
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be > 0 but is %s", windowSize);
+        Preconditions.checkArgument(minimumNumberOfCalls > 0 && minimumNumberOfCalls <= windowSize,
+                                    "minimumNumberOfCalls must be in [1, windowSize] but is %s",
+                                    minimumNumberOfCalls);
+        Preconditions.checkArgument(permittedProbes > 0, "permittedProbes must be > 0 but is %s", permittedProbes);
+        Preconditions.checkArgument(probeTimeout.toMillis() > 0L, "probeTimeout must be > 0 but is %s", probeTimeout);
+        this.failureRateThreshold = failureRateThreshold;
+        this.windowSize = windowSize;
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        this.permittedProbes = permittedProbes;
+        this.probeTimeout = Math.min(TimeUnit.MILLISECONDS.toNanos(probeTimeout.toMillis()), MAX_WAIT_NANOS);
+        this.waitStrategy = waitStrategy;
+        this.clock = clock;
+        this.snapshot = new AtomicReference<>(closed());
+    }
+
+    /**
+     * Execute the callable if the circuit breaker permits it, recording its outcome. Throw
+     * {@link CircuitBreakerOpenException} without executing the callable otherwise.
+     *
+     * <p>Anything thrown by the callable, {@link Error}s included, is recorded as a failure.
+     *
+     * @param callable the call to the dependency.
+     * @param <V> the type of the result.
+     * @return the result of the callable.
+     * @throws Exception if the callable throws an exception.
+     */
+    public <V> V call(final Callable<V> callable) throws Exception {
+        Objects.requireNonNull(callable, "The callable may not be null");
+        Optional<Permit> permitted = tryAcquirePermission();
+        if (!permitted.isPresent()) {
+            throw new CircuitBreakerOpenException("The circuit breaker does not permit the call");
+        }
+        Permit permit = permitted.get();
+        boolean success = false;
+        try {
+            V result = callable.call();
+            success = true;
+            return result;
+        } finally {
+            if (success) {
+                permit.onSuccess();
+            } else {
+                permit.onError();
+            }
+        }
+    }
+
+    /**
+     * Acquire the permission for a call. The outcome of every permitted call must be reported to the returned
+     * {@link Permit}. A probe whose outcome is never reported is treated as failed after the probe timeout.
+     *
+     * @return the permit of the call, empty if the call is not permitted.
+     */
+    public Optional<Permit> tryAcquirePermission() {
+        while (true) {
+            Snapshot current = snapshot.get();
+            long now = clock.getAsLong();
+            if (current.state == State.CLOSED) {
+                return Optional.of(new Permit(current));
+            }
+            if (current.state == State.HALF_OPEN && !current.isExpired(now)) {
+                boolean permitted = current.probes.getAndUpdate(probes -> Math.max(0, probes - 1)) > 0;
+                return permitted ? Optional.of(new Permit(current)) : Optional.empty();
+            }
+            if (current.state == State.HALF_OPEN) {
+                expire(current);
+            } else if (!current.isExpired(now)) {
+                return Optional.empty();
+            } else {
+                // The wait is over: only one caller moves the state to half open, the others retry on the new state
+                transition(current, () -> halfOpen(current.openings));
+            }
+        }
+    }
+
+    /**
+     * @return the current state.
+     */
+    public State getState() {
+        Snapshot current = snapshot.get();
+        if (current.state == State.OPEN && current.isExpired(clock.getAsLong())) {
+            return State.HALF_OPEN;
+        }
+        return current.state;
+    }
+
+    /**
+     * Return a {@link StopStrategy} that stops the retries as soon as the circuit breaker is open, so that the
+     * callers of an unhealthy dependency do not run their full retry sequence.
+     *
+     * @param stopStrategy the strategy used while the circuit breaker is not open.
+     * @return the stop strategy.
+     */
+    public StopStrategy stopIfOpen(final StopStrategy stopStrategy) {
+        Objects.requireNonNull(stopStrategy, "The stop strategy may not be null");
+        return failedAttempt -> getState() == State.OPEN || stopStrategy.shouldStop(failedAttempt);
+    }
+
+    /**
+     * Leave a half open state whose probes have not all reported their outcome within the probe timeout.
+     *
+     * @param expected the expired half open state.
+     */
+    private void expire(final Snapshot expected) {
+        int acquired = permittedProbes - expected.probes.get();
+        int successes = expected.successes.get();
+        if (acquired > successes) {
+            // Some probes may never report their outcome
+            reopen(expected, expected.openings + 1L);
+        } else if (successes > 0) {
+            // The failed probes open the circuit breaker as soon as they are reported, so the reported ones all
+            // succeeded: the unused probes are not needed to close it
+            transition(expected, this::closed);
+        } else {
+            // No probe was acquired in time: wait again for the probes
+            transition(expected, () -> halfOpen(expected.openings));
+        }
+    }
+
+    /**
+     * Replace the current state if it is still the expected one.
+     *
+     * @param expected the state the transition starts from.
+     * @param next the factory of the new state, not invoked if the state has already changed. It may be
+     *             invoked by several racing threads, so it must not have side effects.
+     */
+    private void transition(final Snapshot expected, final Supplier<Snapshot> next) {
+        if (snapshot.get() == expected) {
+            snapshot.compareAndSet(expected, next.get());
+        }
+    }
+
+    /**
+     * Open the circuit breaker if the current state is still the expected one. Only the thread winning the
+     * transition computes the wait with the wait strategy, the open state fails fast until it is set.
+     *
+     * @param expected the state the transition starts from.
+     * @param openings the number of consecutive openings.
+     */
+    private void reopen(final Snapshot expected, final long openings) {
+        Snapshot open = new Snapshot(State.OPEN, openings, 0L, null, null, null);
+        if (snapshot.get() != expected || !snapshot.compareAndSet(expected, open)) {
+            return;
+        }
+        long waitNanos = 0L;
+        try {
+            long wait = waitStrategy.computeSleepTime(new FailedAttempt<>(openings, 0L, null));
+            // Capped so that the comparisons between nanosecond times do not overflow
+            waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(wait, 0L)), MAX_WAIT_NANOS);
+        } finally {
+            // If the wait strategy throws, the circuit breaker becomes half open right away instead of failing
+            // fast forever
+            open.schedule(clock.getAsLong() + waitNanos);
+        }
+    }
+
+    /**
+     * @return a new closed state with an empty sliding window.
+     */
+    private Snapshot closed() {
+        return new Snapshot(State.CLOSED, 0L, 0L, new RingBuffer(windowSize), null, null);
+    }
+
+    /**
+     * @param openings the number of consecutive openings.
+     * @return a new half open state permitting {@link #permittedProbes} calls.
+     */
+    private Snapshot halfOpen(final long openings) {
+        return new Snapshot(State.HALF_OPEN, openings, clock.getAsLong() + probeTimeout, null,
+                            new AtomicInteger(permittedProbes), new AtomicInteger());
+    }
+
+    /**
+     * The permission for a call, bound to the state of the circuit breaker that permitted it. Only the first
+     * outcome reported is recorded.
+     */
+    @ThreadSafe
+    public final class Permit {
+        /**
+         * The state that permitted the call.
+         */
+        private final Snapshot permittedBy;
+
+        /**
+         * Whether the outcome has already been reported.
+         */
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        /**
+         * @param permittedBy the state that permitted the call.
+         */
+        private Permit(final Snapshot permittedBy) {
+            this.permittedBy = permittedBy;
+        }
+
+        /**
+         * Record the success of the permitted call.
+         */
+        public void onSuccess() {
+            if (!reported.compareAndSet(false, true)) {
+                return;
+            }
+            if (permittedBy.state == State.CLOSED) {
+                permittedBy.window.record(false);
+            } else if (permittedBy.successes.incrementAndGet() >= permittedProbes) {
+                transition(permittedBy, CircuitBreaker.this::closed);
+            }
+        }
+
+        /**
+         * Record the failure of the permitted call.
+         */
+        public void onError() {
+            if (!reported.compareAndSet(false, true)) {
+                return;
+            }
+            if (permittedBy.state == State.CLOSED) {
+                int failures = permittedBy.window.record(true);
+                int calls = permittedBy.window.size();
+                if (calls >= minimumNumberOfCalls && failures >= failureRateThreshold * calls) {
+                    reopen(permittedBy, 1L);
+                }
+            } else {
+                reopen(permittedBy, permittedBy.openings + 1L);
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the state of the circuit breaker. A transition replaces the whole snapshot.
+     */
+    private static final class Snapshot {
+        /**
+         * The state.
+         */
+        private final State state;
+
+        /**
+         * The number of consecutive openings.
+         */
+        private final long openings;
+
+        /**
+         * The time in nanoseconds at which an open circuit breaker becomes half open, or a half open circuit
+         * breaker stops waiting for the outcome of the probes.
+         */
+        private volatile long deadline;
+
+        /**
+         * Whether the deadline of an open state is still being computed by the thread that opened it.
+         */
+        private volatile boolean pending;
+
+        /**
+         * The sliding window of a closed circuit breaker.
+         */
+        private final RingBuffer window;
+
+        /**
+         * The probes still permitted by a half open circuit breaker.
+         */
+        private final AtomicInteger probes;
+
+        /**
+         * The successful probes of a half open circuit breaker.
+         */
+        private final AtomicInteger successes;
+
+        /**
+         * @param state the state.
+         * @param openings the number of consecutive openings.
+         * @param deadline the time in nanoseconds at which the state expires, set later by
+         *                 {@link #schedule(long)} for an open state.
+         * @param window the sliding window of a closed circuit breaker.
+         * @param probes the probes still permitted by a half open circuit breaker.
+         * @param successes the successful probes of a half open circuit breaker.
+         */
+        Snapshot(final State state, final long openings, final long deadline, final RingBuffer window,
+                 final AtomicInteger probes, final AtomicInteger successes) {
+            this.state = state;
+            this.openings = openings;
+            this.deadline = deadline;
+            this.window = window;
+            this.probes = probes;
+            this.successes = successes;
+            this.pending = state == State.OPEN;
+        }
+
+        /**
+         * Set the deadline of an open state.
+         *
+         * @param time the time in nanoseconds at which the open state becomes half open.
+         */
+        void schedule(final long time) {
+            deadline = time;
+            pending = false;
+        }
+
+        /**
+         * @param now the current time in nanoseconds.
+         * @return whether the deadline is set and has passed.
+         */
+        boolean isExpired(final long now) {
+            return !pending && now - deadline >= 0L;
+        }
+    }
+
+    /**
+     * A fixed size ring buffer holding the outcomes of the last calls.
+     */
+    @ThreadSafe
+    private static final class RingBuffer {
+        /**
+         * The outcome of a successful call.
+         */
+        private static final int SUCCESS = 1;
+
+        /**
+         * The outcome of a failed call.
+         */
+        private static final int FAILURE = 2;
+
+        /**
+         * The outcomes, zero for the slots not recorded yet.
+         */
+        private final AtomicIntegerArray outcomes;
+
+        /**
+         * The number of recorded calls.
+         */
+        private final AtomicLong recorded = new AtomicLong();
+
+        /**
+         * The number of failures in the buffer.
+         */
+        private final AtomicInteger failures = new AtomicInteger();
+
+        /**
+         * @param size the number of calls of the buffer.
+         */
+        RingBuffer(final int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        /**
+         * Record the outcome of a call, overwriting the oldest one if the buffer is full.
+         *
+         * @param failure whether the call failed.
+         * @return the number of failures in the buffer.
+         */
+        int record(final boolean failure) {
+            int slot = (int) (recorded.getAndIncrement() % outcomes.length());
+            int previous = outcomes.getAndSet(slot, failure ? FAILURE : SUCCESS);
+            int delta = (failure ? 1 : 0) - (previous == FAILURE ? 1 : 0);
+            return delta == 0 ? failures.get() : failures.addAndGet(delta);
+        }
+
+        /**
+         * @return the number of calls in the buffer.
+         */
+        int size() {
+            return (int) Math.min(recorded.get(), outcomes.length());
+        }
+    }
+}
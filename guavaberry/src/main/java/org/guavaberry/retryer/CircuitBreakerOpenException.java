@@ -0,0 +1,21 @@
+package org.guavaberry.retryer;
+
+/**
+ * Thrown by {@link CircuitBreaker#call(java.util.concurrent.Callable)} when the circuit breaker does not permit
+ * the call because it is open, or because it is half open and all the probes are already in flight.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+    /**
+     * The serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct an instance of {@link CircuitBreakerOpenException}.
+     *
+     * @param message the detail message.
+     */
+    public CircuitBreakerOpenException(final String message) {
+        super(message);
+    }
+}
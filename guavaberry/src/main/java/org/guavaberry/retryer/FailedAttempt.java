@@ -0,0 +1,77 @@
+package org.guavaberry.retryer;
+
+import com.github.rholder.retry.Attempt;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A failed {@link Attempt} built by the components of this package that drive a
+ * {@link com.github.rholder.retry.WaitStrategy} or a {@link com.github.rholder.retry.StopStrategy}
+ * outside of a {@link com.github.rholder.retry.Retryer}.
+ *
+ * @param <T> type of the result of the attempt
+ */
+@Immutable
+final class FailedAttempt<T> implements Attempt<T> {
+    /**
+     * The number of the attempt.
+     */
+    private final long attemptNumber;
+
+    /**
+     * The delay since the first attempt in milliseconds.
+     */
+    private final long delaySinceFirstAttempt;
+
+    /**
+     * The exception that caused the failure or null if unknown.
+     */
+    private final Throwable cause;
+
+    /**
+     * @param attemptNumber the number of the attempt.
+     * @param delaySinceFirstAttempt the delay since the first attempt in milliseconds.
+     * @param cause the exception that caused the failure or null if unknown.
+     */
+    FailedAttempt(final long attemptNumber, final long delaySinceFirstAttempt, final Throwable cause) {
+        this.attemptNumber = attemptNumber;
+        this.delaySinceFirstAttempt = delaySinceFirstAttempt;
+        this.cause = cause;
+    }
+
+    @Override
+    public T get() throws ExecutionException {
+        throw new ExecutionException(cause);
+    }
+
+    @Override
+    public boolean hasResult() {
+        return false;
+    }
+
+    @Override
+    public boolean hasException() {
+        return true;
+    }
+
+    @Override
+    public T getResult() {
+        throw new IllegalStateException("The attempt resulted in an exception, not in a result");
+    }
+
+    @Override
+    public Throwable getExceptionCause() {
+        return cause;
+    }
+
+    @Override
+    public long getAttemptNumber() {
+        return attemptNumber;
+    }
+
+    @Override
+    public long getDelaySinceFirstAttempt() {
+        return delaySinceFirstAttempt;
+    }
+}
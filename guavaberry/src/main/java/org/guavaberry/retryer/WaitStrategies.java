@@ -3,6 +3,7 @@ package org.guavaberry.retryer;
 import com.github.rholder.retry.Attempt;
 import com.github.rholder.retry.WaitStrategy;
 import com.google.common.base.Preconditions;
+import org.guavaberry.function.NullaryOperator;
 
 import javax.annotation.concurrent.Immutable;
 import java.time.Duration;
@@ -15,8 +16,8 @@ import java.util.Random;
  * <p>These factories return wait strategies that can be used with the library
  * <a href=https://github.com/rholder/guava-retrying>Guava Retrying</a>.
  *
- * <p>There are three wait strategies documented below: {@link ExponentialJitterWaitStrategy},
- * {@link ExponentialWaitStrategy} and {@link CompositeJitterWaitStrategy}.
+ * <p>There are four wait strategies documented below: {@link ExponentialJitterWaitStrategy},
+ * {@link ExponentialWaitStrategy}, {@link CompositeJitterWaitStrategy} and {@link AdaptiveWaitStrategy}.
  *
  * <h2>{@link ExponentialJitterWaitStrategy}</h2>
  * This implementation of {@link WaitStrategy} is helpful whenever there are competing clients that
@@ -126,6 +127,20 @@ import java.util.Random;
  * <p>Where {@code wait} is the wait time calculated for the i-th attempt by the existing waiting strategy and
  * {@code randomization_factor} is a double belonging to the interval [0.0, 1.0].
  *
+ * <h2>{@link AdaptiveWaitStrategy}</h2>
+ * This implementation of {@link WaitStrategy} holds a delay shared among all the callers of the same dependency.
+ * The delay is multiplied by an increase factor on each failure and decreased by a constant step on each success,
+ * so that new calls to a dependency that has been failing for a while do not start again from the base timeout.
+ *
+ * <p>The interval for the i-th retry is calculated in the following way:
+ * {@code
+ *   min_value = current_delay * (1 - randomization_factor)
+ *   max_value = current_delay
+ * }
+ *
+ * <p>Where {@code current_delay} is the delay observed by the i-th attempt, belonging to the interval
+ * [base_timeout, max_timeout].
+ *
  *
  * @author Filippo Squillace
  *
@@ -149,6 +164,26 @@ public final class WaitStrategies {
      */
     private static final Duration DEFAULT_BASE_TIMEOUT = Duration.ofSeconds(1L);
 
+    /**
+     * The default increase factor of the adaptive delay (2.0).
+     */
+    private static final double DEFAULT_INCREASE_FACTOR = 2.0D;
+
+    /**
+     * The default max timeout (no cap).
+     */
+    private static final Duration DEFAULT_MAX_TIMEOUT = Duration.ofMillis(Long.MAX_VALUE);
+
+    /**
+     * The default max timeout of the adaptive delay (5 minutes).
+     */
+    private static final Duration DEFAULT_ADAPTIVE_MAX_TIMEOUT = Duration.ofMinutes(5L);
+
+    /**
+     * The latency threshold that never considers a success as a congestion signal.
+     */
+    private static final Duration NO_LATENCY_THRESHOLD = Duration.ofMillis(Long.MAX_VALUE);
+
     /**
      * Return an instance of {@link ExponentialJitterWaitStrategy} with the default base timeout (1 second), the default
      * randomization factor (0.5) and without a max timeout.
@@ -156,8 +191,7 @@ public final class WaitStrategies {
      * @return instance of {@link ExponentialJitterWaitStrategy}
      */
     public static WaitStrategy exponentialJitterWait() {
-        return exponentialJitterWait(DEFAULT_BASE_TIMEOUT,
-                                     Duration.ofMillis(Long.MAX_VALUE), DEFAULT_RANDOMIZATION_FACTOR);
+        return exponentialJitterWait(DEFAULT_BASE_TIMEOUT, DEFAULT_MAX_TIMEOUT, DEFAULT_RANDOMIZATION_FACTOR);
     }
 
     /**
@@ -210,7 +244,27 @@ public final class WaitStrategies {
                                                      final Duration maxTimeout,
                                                      final double randomizationFactor) {
         return new ExponentialJitterWaitStrategy(baseTimeout, maxTimeout,
-                                                 randomizationFactor);
+                                                 randomizationFactor, Random::new);
+    }
+
+    /**
+     * Return an instance of {@link ExponentialJitterWaitStrategy} drawing the jitter from the given
+     * random generator. Useful for reproducible simulations.
+     *
+     * @param baseTimeout the base time delay.
+     * @param maxTimeout the calculated time will be capped to this value.
+     * @param randomizationFactor the randomization factor for creating a range around the retry interval.
+     * @param random the random generator used for the jitter.
+     *
+     * @return instance of {@link ExponentialJitterWaitStrategy}
+     */
+    static WaitStrategy exponentialJitterWait(final Duration baseTimeout,
+                                              final Duration maxTimeout,
+                                              final double randomizationFactor,
+                                              final Random random) {
+        Objects.requireNonNull(random, "The random generator may not be null");
+        return new ExponentialJitterWaitStrategy(baseTimeout, maxTimeout,
+                                                 randomizationFactor, () -> random);
     }
 
     /**
@@ -248,7 +302,105 @@ public final class WaitStrategies {
      */
     public static WaitStrategy compositeJitterWait(final WaitStrategy waitStrategy,
                                                    final double randomizationFactor) {
-        return new CompositeJitterWaitStrategy(waitStrategy, randomizationFactor);
+        return new CompositeJitterWaitStrategy(waitStrategy, randomizationFactor, Random::new);
+    }
+
+    /**
+     * Return an instance of {@link CompositeJitterWaitStrategy} drawing the jitter from the given
+     * random generator. Useful for reproducible simulations.
+     *
+     * @param waitStrategy the wait strategy used for combining with the random interval
+     *                     generated by the randomization factor.
+     * @param randomizationFactor the randomization factor for creating a range around the retry interval.
+     * @param random the random generator used for the jitter.
+     *
+     * @return instance of {@link CompositeJitterWaitStrategy}
+     */
+    static WaitStrategy compositeJitterWait(final WaitStrategy waitStrategy,
+                                            final double randomizationFactor,
+                                            final Random random) {
+        Objects.requireNonNull(random, "The random generator may not be null");
+        return new CompositeJitterWaitStrategy(waitStrategy, randomizationFactor, () -> random);
+    }
+
+    /**
+     * Return an instance of {@link AdaptiveWaitStrategy} with the default base timeout (1 second), the default
+     * randomization factor (0.5), the default increase factor (2.0), a decrease step equal to the base timeout,
+     * the default max timeout (5 minutes) and without a latency threshold.
+     *
+     * @return instance of {@link AdaptiveWaitStrategy}
+     */
+    public static AdaptiveWaitStrategy adaptiveJitterWait() {
+        return adaptiveJitterWait(DEFAULT_BASE_TIMEOUT, DEFAULT_ADAPTIVE_MAX_TIMEOUT);
+    }
+
+    /**
+     * Return an instance of {@link AdaptiveWaitStrategy} with the default randomization factor (0.5),
+     * the default increase factor (2.0), a decrease step equal to the base timeout and without a latency threshold.
+     *
+     * @param baseTimeout the initial and minimum delay.
+     * @param maxTimeout the delay will be capped to this value.
+     *
+     * @return instance of {@link AdaptiveWaitStrategy}
+     */
+    public static AdaptiveWaitStrategy adaptiveJitterWait(final Duration baseTimeout, final Duration maxTimeout) {
+        return adaptiveJitterWait(baseTimeout, maxTimeout, DEFAULT_RANDOMIZATION_FACTOR);
+    }
+
+    /**
+     * Return an instance of {@link AdaptiveWaitStrategy} with the default increase factor (2.0),
+     * a decrease step equal to the base timeout and without a latency threshold.
+     *
+     * @param baseTimeout the initial and minimum delay.
+     * @param maxTimeout the delay will be capped to this value.
+     * @param randomizationFactor the randomization factor for creating a range around the delay.
+     *
+     * @return instance of {@link AdaptiveWaitStrategy}
+     */
+    public static AdaptiveWaitStrategy adaptiveJitterWait(final Duration baseTimeout, final Duration maxTimeout,
+                                                          final double randomizationFactor) {
+        return adaptiveJitterWait(baseTimeout, maxTimeout, DEFAULT_INCREASE_FACTOR, baseTimeout,
+                                  NO_LATENCY_THRESHOLD, randomizationFactor);
+    }
+
+    /**
+     * Return an instance of {@link AdaptiveWaitStrategy}.
+     *
+     * @param baseTimeout the initial and minimum delay.
+     * @param maxTimeout the delay will be capped to this value.
+     * @param increaseFactor the factor the delay is multiplied by on each failure.
+     * @param decreaseStep the amount the delay is decreased by on each success.
+     * @param latencyThreshold the latency above which a success increases the delay as a failure does.
+     * @param randomizationFactor the randomization factor for creating a range around the delay.
+     *
+     * @return instance of {@link AdaptiveWaitStrategy}
+     */
+    public static AdaptiveWaitStrategy adaptiveJitterWait(final Duration baseTimeout,
+                                                          final Duration maxTimeout,
+                                                          final double increaseFactor,
+                                                          final Duration decreaseStep,
+                                                          final Duration latencyThreshold,
+                                                          final double randomizationFactor) {
+        return new AdaptiveWaitStrategy(baseTimeout, maxTimeout, increaseFactor, decreaseStep,
+                                        latencyThreshold, randomizationFactor, new Random());
+    }
+
+    /**
+     * Return an instance of {@link AdaptiveWaitStrategy} drawing the jitter from the given random generator,
+     * with the default increase factor (2.0), a decrease step equal to the base timeout and without
+     * a latency threshold. Useful for reproducible simulations.
+     *
+     * @param baseTimeout the initial and minimum delay.
+     * @param maxTimeout the delay will be capped to this value.
+     * @param randomizationFactor the randomization factor for creating a range around the delay.
+     * @param random the random generator used for the jitter.
+     *
+     * @return instance of {@link AdaptiveWaitStrategy}
+     */
+    static AdaptiveWaitStrategy adaptiveJitterWait(final Duration baseTimeout, final Duration maxTimeout,
+                                                   final double randomizationFactor, final Random random) {
+        return new AdaptiveWaitStrategy(baseTimeout, maxTimeout, DEFAULT_INCREASE_FACTOR, baseTimeout,
+                                        NO_LATENCY_THRESHOLD, randomizationFactor, random);
     }
 
     /**
@@ -267,11 +419,13 @@ public final class WaitStrategies {
          * @param baseTimeout the base time delay.
          * @param maxTimeout the calculated time will be capped to this value.
          * @param randomizationFactor the randomization factor for creating a range around the retry interval.
+         * @param randomFactory the factory of the random generator used for the jitter.
          */
         ExponentialJitterWaitStrategy(final Duration baseTimeout, final Duration maxTimeout,
-                                             final double randomizationFactor) {
+                                      final double randomizationFactor,
+                                      final NullaryOperator<Random> randomFactory) {
             jitterWaitStrategy = new CompositeJitterWaitStrategy(exponentialWait(baseTimeout, maxTimeout),
-                                                                 randomizationFactor);
+                                                                 randomizationFactor, randomFactory);
         }
 
         /**
@@ -346,6 +500,10 @@ public final class WaitStrategies {
          * The randomization factor for creating a range around the retry interval.
          */
         private final double randomizationFactor;
+        /**
+         * The factory of the random generator used for the jitter.
+         */
+        private final NullaryOperator<Random> randomFactory;
 
         /**
          * Construct an instance of {@link CompositeJitterWaitStrategy}.
@@ -353,8 +511,10 @@ public final class WaitStrategies {
          * @param waitStrategy the wait strategy used for combining with the random interval
          *                     generated by the randomization factor.
          * @param randomizationFactor the randomization factor for creating a range around the retry interval.
+         * @param randomFactory the factory of the random generator used for the jitter.
          */
-        CompositeJitterWaitStrategy(final WaitStrategy waitStrategy, final double randomizationFactor) {
+        CompositeJitterWaitStrategy(final WaitStrategy waitStrategy, final double randomizationFactor,
+                                    final NullaryOperator<Random> randomFactory) {
             Objects.requireNonNull(waitStrategy, "The wait strategy may not be null");
             Preconditions.checkArgument(randomizationFactor >= 0.0D, "randomizationFactor must be >= 0.0 but is %s",
                                         randomizationFactor);
@@ -362,6 +522,7 @@ public final class WaitStrategies {
                                         randomizationFactor);
             this.waitStrategy = waitStrategy;
             this.randomizationFactor = randomizationFactor;
+            this.randomFactory = randomFactory;
         }
 
         /**
@@ -372,8 +533,13 @@ public final class WaitStrategies {
             Objects.requireNonNull(failedAttempt, "The failedAttempt may not be null");
             long waitTime = waitStrategy.computeSleepTime(failedAttempt);
             long minRange = (long) (waitTime * (1 - randomizationFactor));
+            if (minRange >= waitTime) {
+                return waitTime;
+            }
+            // The upper bound of the range is exclusive: avoid overflowing when the wait time is not capped
+            long maxRange = waitTime == Long.MAX_VALUE ? waitTime : waitTime + 1;
 
-            return new Random().longs(1L, minRange, waitTime + 1).findFirst().getAsLong();
+            return randomFactory.op().longs(1L, minRange, maxRange).findFirst().getAsLong();
         }
     }
 }
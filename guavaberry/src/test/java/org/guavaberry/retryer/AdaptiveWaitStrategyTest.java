@@ -0,0 +1,217 @@
+package org.guavaberry.retryer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.rholder.retry.Attempt;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveWaitStrategyTest {
+    private static final Duration ONE_MILLI = Duration.ofMillis(1L);
+
+    @Mock
+    private Attempt attemptMock;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    private static AdaptiveWaitStrategy noJitter() {
+        return WaitStrategies.adaptiveJitterWait(Duration.ofSeconds(1L), Duration.ofSeconds(10L), 2.0D,
+                                                 Duration.ofMillis(500L), Duration.ofSeconds(2L), 0.0D);
+    }
+
+    @Test
+    public void adaptiveJitterWaitFactories() throws Exception {
+        assertEquals(Duration.ofSeconds(1L), WaitStrategies.adaptiveJitterWait().getCurrentDelay());
+        assertEquals(ONE_MILLI, WaitStrategies.adaptiveJitterWait(ONE_MILLI, ONE_MILLI).getCurrentDelay());
+        assertEquals(ONE_MILLI, WaitStrategies.adaptiveJitterWait(ONE_MILLI, ONE_MILLI, 1.0D).getCurrentDelay());
+    }
+
+    @Test
+    public void adaptiveJitterWaitDefaultMaxTimeout() throws Exception {
+        AdaptiveWaitStrategy ws = WaitStrategies.adaptiveJitterWait();
+        for (int i = 0; i < 100; i++) {
+            assertThat(ws.computeSleepTime(attemptMock)).isBetween(0L, Duration.ofMinutes(5L).toMillis());
+        }
+        assertEquals(Duration.ofMinutes(5L), ws.getCurrentDelay());
+    }
+
+    @Test
+    public void adaptiveJitterWaitUncappedDelay() throws Exception {
+        AdaptiveWaitStrategy ws = WaitStrategies.adaptiveJitterWait(ONE_MILLI, Duration.ofMillis(Long.MAX_VALUE));
+        for (int i = 0; i < 100; i++) {
+            assertThat(ws.computeSleepTime(attemptMock)).isBetween(0L, Long.MAX_VALUE);
+        }
+        assertEquals(Duration.ofMillis(Long.MAX_VALUE), ws.getCurrentDelay());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void adaptiveJitterWaitNullBaseTimeout() throws Exception {
+        WaitStrategies.adaptiveJitterWait(null, Duration.ZERO);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void adaptiveJitterWaitNullMaxTimeout() throws Exception {
+        WaitStrategies.adaptiveJitterWait(Duration.ZERO, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void adaptiveJitterWaitNullDecreaseStep() throws Exception {
+        WaitStrategies.adaptiveJitterWait(Duration.ZERO, Duration.ZERO, 2.0D, null, Duration.ZERO, 0.5D);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void adaptiveJitterWaitNullLatencyThreshold() throws Exception {
+        WaitStrategies.adaptiveJitterWait(Duration.ZERO, Duration.ZERO, 2.0D, Duration.ZERO, null, 0.5D);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitNegativeBaseTimeout() throws Exception {
+        WaitStrategies.adaptiveJitterWait(Duration.ofMillis(-1L), Duration.ZERO);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitZeroBaseTimeout() throws Exception {
+        WaitStrategies.adaptiveJitterWait(Duration.ZERO, Duration.ofSeconds(10L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitMaxTimeoutLowerThanBaseTimeout() throws Exception {
+        WaitStrategies.adaptiveJitterWait(Duration.ofSeconds(2L), Duration.ofSeconds(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitIncreaseFactorLowerThanOne() throws Exception {
+        WaitStrategies.adaptiveJitterWait(ONE_MILLI, ONE_MILLI, 0.9D, Duration.ZERO, Duration.ZERO, 0.5D);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitNegativeDecreaseStep() throws Exception {
+        WaitStrategies.adaptiveJitterWait(ONE_MILLI, ONE_MILLI, 2.0D, Duration.ofMillis(-1L),
+                                          Duration.ZERO, 0.5D);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitNegativeLatencyThreshold() throws Exception {
+        WaitStrategies.adaptiveJitterWait(ONE_MILLI, ONE_MILLI, 2.0D, Duration.ZERO,
+                                          Duration.ofMillis(-1L), 0.5D);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveJitterWaitRandomFactorGreaterThanOne() throws Exception {
+        WaitStrategies.adaptiveJitterWait(ONE_MILLI, ONE_MILLI, 1.1D);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void adaptiveJitterWaitNullAttempt() throws Exception {
+        noJitter().computeSleepTime(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void adaptiveJitterWaitNullLatency() throws Exception {
+        noJitter().onSuccess(null);
+    }
+
+    @Test
+    public void adaptiveJitterWaitIncreasesOnFailures() throws Exception {
+        AdaptiveWaitStrategy ws = noJitter();
+        assertEquals(1000L, ws.computeSleepTime(attemptMock));
+        assertEquals(2000L, ws.computeSleepTime(attemptMock));
+        assertEquals(4000L, ws.computeSleepTime(attemptMock));
+        assertEquals(8000L, ws.computeSleepTime(attemptMock));
+        assertEquals(10000L, ws.computeSleepTime(attemptMock));
+        assertEquals(10000L, ws.computeSleepTime(attemptMock));
+    }
+
+    @Test
+    public void adaptiveJitterWaitIncreasesSmallDelays() throws Exception {
+        AdaptiveWaitStrategy ws = WaitStrategies.adaptiveJitterWait(ONE_MILLI, Duration.ofSeconds(1L), 1.5D,
+                                                                    ONE_MILLI, Duration.ZERO, 0.0D);
+        List<Long> delays = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ws.onFailure();
+            delays.add(ws.getCurrentDelay().toMillis());
+        }
+        assertThat(delays).containsExactly(2L, 3L, 5L, 8L, 12L);
+
+        ws = WaitStrategies.adaptiveJitterWait(Duration.ofMillis(3L), Duration.ofMillis(6L), 1.1D,
+                                               ONE_MILLI, Duration.ZERO, 0.0D);
+        delays.clear();
+        for (int i = 0; i < 5; i++) {
+            ws.onFailure();
+            delays.add(ws.getCurrentDelay().toMillis());
+        }
+        assertThat(delays).containsExactly(4L, 5L, 6L, 6L, 6L);
+    }
+
+    @Test
+    public void adaptiveJitterWaitDecreasesOnSuccesses() throws Exception {
+        AdaptiveWaitStrategy ws = noJitter();
+        ws.onFailure();
+        ws.onFailure();
+        assertEquals(Duration.ofSeconds(4L), ws.getCurrentDelay());
+        ws.onSuccess();
+        assertEquals(Duration.ofMillis(3500L), ws.getCurrentDelay());
+        for (int i = 0; i < 10; i++) {
+            ws.onSuccess();
+        }
+        assertEquals(Duration.ofSeconds(1L), ws.getCurrentDelay());
+    }
+
+    @Test
+    public void adaptiveJitterWaitSlowSuccessIncreases() throws Exception {
+        AdaptiveWaitStrategy ws = noJitter();
+        ws.onSuccess(Duration.ofSeconds(3L));
+        assertEquals(Duration.ofSeconds(2L), ws.getCurrentDelay());
+        ws.onSuccess(Duration.ofSeconds(1L));
+        assertEquals(Duration.ofMillis(1500L), ws.getCurrentDelay());
+    }
+
+    @Test
+    public void adaptiveJitterWaitSharedAmongCallers() throws Exception {
+        AdaptiveWaitStrategy ws = WaitStrategies.adaptiveJitterWait(ONE_MILLI, Duration.ofMillis(Long.MAX_VALUE),
+                                                                    2.0D, ONE_MILLI, Duration.ZERO, 0.0D);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int j = 0; j < 5; j++) {
+                    ws.onFailure();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // No failure is lost: 40 doublings of the 1 ms base
+        assertEquals(Duration.ofMillis(1L << 40), ws.getCurrentDelay());
+    }
+
+    @Test
+    public void adaptiveJitterWaitHalfRandomFactor() throws Exception {
+        AdaptiveWaitStrategy ws = WaitStrategies.adaptiveJitterWait(Duration.ofSeconds(4L), Duration.ofSeconds(8L),
+                                                                    0.5D);
+        assertThat(ws.computeSleepTime(attemptMock)).isBetween(2000L, 4000L);
+        assertThat(ws.computeSleepTime(attemptMock)).isBetween(4000L, 8000L);
+    }
+}
@@ -0,0 +1,335 @@
+package org.guavaberry.retryer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.StopStrategies;
+import com.github.rholder.retry.WaitStrategy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchRetryerTest {
+    private static final WaitStrategy NO_WAIT = com.github.rholder.retry.WaitStrategies.noWait();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param failures the items failing at least once, removed from the set when they fail.
+     * @return a callable recording the calls and failing each item of {@code failures} once.
+     */
+    private BatchCallable<String> failOnce(final Set<String> failures) {
+        return items -> {
+            calls.add(new ArrayList<>(items));
+            BitSet failed = new BitSet();
+            for (int i = 0; i < items.size(); i++) {
+                if (failures.remove(items.get(i))) {
+                    failed.set(i);
+                }
+            }
+            return failed;
+        };
+    }
+
+    private static Set<String> setOf(final String... items) {
+        Set<String> set = ConcurrentHashMap.newKeySet();
+        set.addAll(Arrays.asList(items));
+        return set;
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void batchRetryerNullCallable() {
+        new BatchRetryer<String>(null, NO_WAIT, StopStrategies.neverStop(), executor);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void batchRetryerNullWaitStrategy() {
+        new BatchRetryer<String>(items -> new BitSet(), null, StopStrategies.neverStop(), executor);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void batchRetryerNullStopStrategy() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, null, executor);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void batchRetryerNullWaitMode() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, StopStrategies.neverStop(), null,
+                                 Duration.ofMillis(1L), 1, executor);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void batchRetryerNullTick() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, StopStrategies.neverStop(),
+                                 BatchRetryer.WaitMode.PER_ITEM, null, 1, executor);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void batchRetryerNullExecutor() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, StopStrategies.neverStop(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchRetryerZeroTick() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, StopStrategies.neverStop(),
+                                 BatchRetryer.WaitMode.PER_ITEM, Duration.ZERO, 1, executor);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchRetryerZeroMaxBatchSize() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, StopStrategies.neverStop(),
+                                 BatchRetryer.WaitMode.PER_ITEM, Duration.ofMillis(1L), 0, executor);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void submitNullItems() {
+        new BatchRetryer<String>(items -> new BitSet(), NO_WAIT, StopStrategies.neverStop(), executor).submit(null);
+    }
+
+    @Test
+    public void submitEmptyBatch() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf()), NO_WAIT, StopStrategies.neverStop(),
+                                                          executor);
+        assertEquals(Collections.emptyList(), retryer.submit(Collections.emptyList()).get(1L, TimeUnit.SECONDS));
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void submitAllSucceeded() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf()), NO_WAIT, StopStrategies.neverStop(),
+                                                          executor);
+        assertEquals(Collections.emptyList(), retryer.submit(Arrays.asList("a", "b")).get(1L, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b")), calls);
+    }
+
+    @Test
+    public void submitRetriesOnlyFailedItems() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf("b", "d")), NO_WAIT,
+                                                          StopStrategies.neverStop(), executor);
+        assertEquals(Collections.emptyList(),
+                     retryer.submit(Arrays.asList("a", "b", "c", "d")).get(1L, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), calls.get(0));
+        assertThat(calls.stream().skip(1L).flatMap(List::stream)).containsExactlyInAnyOrder("b", "d");
+    }
+
+    @Test
+    public void submitRetriesPerBatch() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf("b", "d")),
+                com.github.rholder.retry.WaitStrategies.fixedWait(5L, TimeUnit.MILLISECONDS),
+                StopStrategies.neverStop(), BatchRetryer.WaitMode.PER_BATCH, Duration.ofMillis(1L), 10, executor);
+        assertEquals(Collections.emptyList(),
+                     retryer.submit(Arrays.asList("a", "b", "c", "d")).get(1L, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c", "d"), Arrays.asList("b", "d")), calls);
+    }
+
+    @Test
+    public void submitGivesUp() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(items -> {
+            calls.add(items);
+            BitSet failed = new BitSet();
+            failed.set(items.indexOf("b"));
+            return failed;
+        }, NO_WAIT, StopStrategies.stopAfterAttempt(3), executor);
+        assertEquals(Collections.singletonList("b"),
+                     retryer.submit(Arrays.asList("a", "b")).get(1L, TimeUnit.SECONDS));
+        assertEquals(3, calls.size());
+    }
+
+    @Test
+    public void submitRetriesWholeBatchOnException() throws Exception {
+        List<Throwable> causes = new CopyOnWriteArrayList<>();
+        BatchRetryer<String> retryer = new BatchRetryer<>(items -> {
+            calls.add(items);
+            if (calls.size() == 1) {
+                throw new IllegalStateException("boom");
+            }
+            return new BitSet();
+        }, NO_WAIT, attempt -> inspect(attempt, causes), executor);
+        assertEquals(Collections.emptyList(), retryer.submit(Arrays.asList("a", "b")).get(1L, TimeUnit.SECONDS));
+        assertThat(calls.stream().skip(1L).flatMap(List::stream)).containsExactlyInAnyOrder("a", "b");
+        assertThat(causes).hasSize(2).allMatch(c -> c instanceof IllegalStateException);
+    }
+
+    @Test
+    public void submitNullResultIsFailure() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(items -> null, NO_WAIT,
+                                                          StopStrategies.stopAfterAttempt(1), executor);
+        assertEquals(Collections.singletonList("a"),
+                     retryer.submit(Collections.singletonList("a")).get(1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submitFailingStrategyCompletesExceptionally() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf("a")), attempt -> {
+            throw new IllegalStateException("boom");
+        }, StopStrategies.neverStop(), executor);
+        try {
+            retryer.submit(Collections.singletonList("a")).get(1L, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void submitCoalescesConcurrentBatches() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf()), NO_WAIT, StopStrategies.neverStop(),
+                                                          BatchRetryer.WaitMode.PER_ITEM, Duration.ofSeconds(1L),
+                                                          Integer.MAX_VALUE, executor);
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(retryer.submit(Collections.singletonList("item" + i)));
+        }
+        for (CompletableFuture<List<String>> future : futures) {
+            assertEquals(Collections.emptyList(), future.get(5L, TimeUnit.SECONDS));
+        }
+        // The batches submitted within the same tick are sent together: at most two ticks are involved
+        assertThat(calls.size()).isLessThanOrEqualTo(2);
+        assertThat(calls.stream().mapToInt(List::size).sum()).isEqualTo(100);
+    }
+
+    @Test
+    public void submitCoalescesJitteredRetries() throws Exception {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add("item" + i);
+        }
+        Set<String> failures = setOf();
+        failures.addAll(items);
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(failures),
+                WaitStrategies.compositeJitterWait(
+                        com.github.rholder.retry.WaitStrategies.fixedWait(100L, TimeUnit.MILLISECONDS), 1.0D),
+                StopStrategies.neverStop(), BatchRetryer.WaitMode.PER_ITEM, Duration.ofMillis(50L),
+                Integer.MAX_VALUE, executor);
+        assertEquals(Collections.emptyList(), retryer.submit(items).get(5L, TimeUnit.SECONDS));
+        // The waits of the 1000 items spread over [0, 100] ms fall into at most 4 ticks of 50 ms
+        assertThat(calls.size() - 1).isBetween(1, 4);
+        assertThat(calls.stream().skip(1L).mapToInt(List::size).sum()).isEqualTo(1000);
+    }
+
+    @Test
+    public void submitSplitsByMaxBatchSize() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf("a", "e")), NO_WAIT,
+                                                          StopStrategies.neverStop(), BatchRetryer.WaitMode.PER_ITEM,
+                                                          Duration.ofMillis(1L), 3, executor);
+        assertEquals(Collections.emptyList(),
+                     retryer.submit(Arrays.asList("a", "b", "c", "d", "e", "f", "g")).get(1L, TimeUnit.SECONDS));
+        assertThat(calls).allMatch(call -> call.size() <= 3);
+        assertThat(calls.stream().mapToInt(List::size).sum()).isEqualTo(9);
+    }
+
+    @Test
+    public void submitErrorCompletesExceptionally() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(items -> {
+            throw new AssertionError("boom");
+        }, NO_WAIT, StopStrategies.neverStop(), executor);
+        try {
+            retryer.submit(Collections.singletonList("a")).get(1L, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AssertionError.class);
+        }
+    }
+
+    @Test
+    public void submitStrategyErrorCompletesExceptionally() throws Exception {
+        BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf("a")), NO_WAIT, attempt -> {
+            throw new AssertionError("boom");
+        }, executor);
+        try {
+            retryer.submit(Collections.singletonList("a")).get(1L, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AssertionError.class);
+        }
+    }
+
+    @Test
+    public void submitRejectedCompletesExceptionally() throws Exception {
+        ScheduledExecutorService rejecting = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException("shutting down");
+            }
+        };
+        try {
+            BatchRetryer<String> retryer = new BatchRetryer<>(failOnce(setOf()), NO_WAIT,
+                                                              StopStrategies.neverStop(), rejecting);
+            retryer.submit(Collections.singletonList("a")).get(1L, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            rejecting.shutdownNow();
+        }
+    }
+
+    @Test
+    public void submitSlowCallDoesNotHoldTheTicks() throws Exception {
+        ScheduledExecutorService pool = Executors.newScheduledThreadPool(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            BatchRetryer<String> retryer = new BatchRetryer<>(items -> {
+                if (items.contains("slow")) {
+                    release.await();
+                }
+                return new BitSet();
+            }, NO_WAIT, StopStrategies.neverStop(), pool);
+            CompletableFuture<List<String>> slow = retryer.submit(Collections.singletonList("slow"));
+            Thread.sleep(50L);
+            assertEquals(Collections.emptyList(),
+                         retryer.submit(Collections.singletonList("fast")).get(1L, TimeUnit.SECONDS));
+            assertFalse(slow.isDone());
+            release.countDown();
+            assertEquals(Collections.emptyList(), slow.get(1L, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean inspect(final Attempt<?> attempt, final List<Throwable> causes) {
+        assertTrue(attempt.hasException());
+        assertFalse(attempt.hasResult());
+        assertEquals(1L, attempt.getAttemptNumber());
+        assertThat(attempt.getDelaySinceFirstAttempt()).isGreaterThanOrEqualTo(0L);
+        try {
+            attempt.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(attempt.getExceptionCause(), e.getCause());
+        }
+        try {
+            attempt.getResult();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            causes.add(attempt.getExceptionCause());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,510 @@
+package org.guavaberry.retryer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.RetryException;
+import com.github.rholder.retry.Retryer;
+import com.github.rholder.retry.RetryerBuilder;
+import com.github.rholder.retry.StopStrategies;
+import com.github.rholder.retry.StopStrategy;
+import com.github.rholder.retry.WaitStrategy;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(10L);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Long> openings = new ArrayList<>();
+
+    /**
+     * A wait strategy of one second per opening, recording the attempt numbers.
+     */
+    private final WaitStrategy linearWait = attempt -> {
+        openings.add(attempt.getAttemptNumber());
+        return attempt.getAttemptNumber() * 1000L;
+    };
+
+    private CircuitBreaker breaker(final WaitStrategy waitStrategy) {
+        return new CircuitBreaker(0.5D, 4, 2, 2, PROBE_TIMEOUT, waitStrategy, clock::get);
+    }
+
+    private void advance(final long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static CircuitBreaker.Permit acquire(final CircuitBreaker breaker) {
+        Optional<CircuitBreaker.Permit> permit = breaker.tryAcquirePermission();
+        assertTrue(permit.isPresent());
+        return permit.get();
+    }
+
+    private static void recordFailure(final CircuitBreaker breaker) {
+        acquire(breaker).onError();
+    }
+
+    private static void recordSuccess(final CircuitBreaker breaker) {
+        acquire(breaker).onSuccess();
+    }
+
+    @Test
+    public void circuitBreakerConstructors() {
+        assertEquals(CircuitBreaker.State.CLOSED,
+                     new CircuitBreaker(WaitStrategies.exponentialJitterWait()).getState());
+        assertEquals(CircuitBreaker.State.CLOSED,
+                     new CircuitBreaker(1.0D, 1, 1, 1, WaitStrategies.exponentialJitterWait()).getState());
+        assertEquals(CircuitBreaker.State.CLOSED,
+                     new CircuitBreaker(1.0D, 1, 1, 1, Duration.ofMillis(Long.MAX_VALUE),
+                                        WaitStrategies.exponentialJitterWait()).getState());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void circuitBreakerNullWaitStrategy() {
+        new CircuitBreaker(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void circuitBreakerNullClock() {
+        new CircuitBreaker(0.5D, 4, 2, 2, PROBE_TIMEOUT, linearWait, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void circuitBreakerNullProbeTimeout() {
+        new CircuitBreaker(0.5D, 4, 2, 2, null, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerZeroProbeTimeout() {
+        new CircuitBreaker(0.5D, 4, 2, 2, Duration.ZERO, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerZeroFailureRate() {
+        new CircuitBreaker(0.0D, 4, 2, 2, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerFailureRateGreaterThanOne() {
+        new CircuitBreaker(1.1D, 4, 2, 2, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerZeroWindowSize() {
+        new CircuitBreaker(0.5D, 0, 1, 2, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerZeroMinimumNumberOfCalls() {
+        new CircuitBreaker(0.5D, 4, 0, 2, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerMinimumNumberOfCallsGreaterThanWindow() {
+        new CircuitBreaker(0.5D, 4, 5, 2, linearWait);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void circuitBreakerZeroPermittedProbes() {
+        new CircuitBreaker(0.5D, 4, 2, 0, linearWait);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void callNullCallable() throws Exception {
+        breaker(linearWait).call(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void stopIfOpenNullStopStrategy() {
+        breaker(linearWait).stopIfOpen(null);
+    }
+
+    @Test
+    public void circuitBreakerWaitsMinimumNumberOfCalls() {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+    }
+
+    @Test
+    public void circuitBreakerSlidingWindow() {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // The oldest success is overwritten: two failures out of four calls
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void circuitBreakerOldFailuresLeaveTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker(0.75D, 4, 4, 2, PROBE_TIMEOUT, linearWait, clock::get);
+        recordFailure(breaker);
+        recordSuccess(breaker);
+        recordFailure(breaker);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void circuitBreakerHalfOpenCloses() {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(999L);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+        advance(1L);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        CircuitBreaker.Permit first = acquire(breaker);
+        CircuitBreaker.Permit second = acquire(breaker);
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+        first.onSuccess();
+        // Only the first outcome of a permit is recorded
+        first.onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        second.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // The window is reset when closing
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void circuitBreakerHalfOpenReopensWithLongerWait() {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        advance(1999L);
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+        advance(1L);
+        recordFailure(breaker);
+        advance(3000L);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        recordFailure(breaker);
+        recordFailure(breaker);
+        assertThat(openings).containsExactly(1L, 2L, 3L, 1L);
+    }
+
+    @Test
+    public void circuitBreakerConcurrentProbes() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5D, 4, 2, 3, PROBE_TIMEOUT, linearWait, clock::get);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        AtomicInteger permitted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(executor.submit(() -> {
+                    if (breaker.tryAcquirePermission().isPresent()) {
+                        permitted.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(3, permitted.get());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void circuitBreakerIgnoresOutcomesOfFormerStates() {
+        CircuitBreaker breaker = breaker(linearWait);
+        CircuitBreaker.Permit slowSuccess = acquire(breaker);
+        CircuitBreaker.Permit slowFailure = acquire(breaker);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        slowFailure.onError();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThat(openings).containsExactly(1L);
+
+        advance(1000L);
+        CircuitBreaker.Permit probe = acquire(breaker);
+        // The late outcomes of the calls permitted while closed do not count as probes
+        slowSuccess.onSuccess();
+        acquire(breaker).onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        probe.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void circuitBreakerLateSuccessesDoNotClose() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5D, 10, 2, 2, PROBE_TIMEOUT, linearWait, clock::get);
+        CircuitBreaker.Permit late1 = acquire(breaker);
+        CircuitBreaker.Permit late2 = acquire(breaker);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        CircuitBreaker.Permit probe = acquire(breaker);
+        late1.onSuccess();
+        late2.onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        probe.onError();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThat(openings).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void circuitBreakerUnreportedProbesExpire() {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        CircuitBreaker.Permit lost = acquire(breaker);
+        acquire(breaker);
+        advance(PROBE_TIMEOUT.toMillis() - 1L);
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+        advance(1L);
+        // The probes never reported: the circuit breaker opens again instead of staying half open forever
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        lost.onSuccess();
+        advance(2000L);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertThat(openings).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void circuitBreakerReportedProbesCloseOnTimeout() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5D, 4, 2, 5, PROBE_TIMEOUT, linearWait, clock::get);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        advance(PROBE_TIMEOUT.toMillis());
+        // The 2 probes acquired in time all succeeded: the unused ones are not needed to close
+        assertTrue(breaker.tryAcquirePermission().isPresent());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertThat(openings).containsExactly(1L);
+    }
+
+    @Test
+    public void circuitBreakerIdleHalfOpenWaitsAgain() {
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger jumpAt = new AtomicInteger(-1);
+        // Moves past the probe timeout right after the read at the given index
+        LongSupplier jumpingClock = () -> {
+            long now = clock.get();
+            if (reads.getAndIncrement() == jumpAt.get()) {
+                advance(PROBE_TIMEOUT.toMillis());
+            }
+            return now;
+        };
+        CircuitBreaker breaker = new CircuitBreaker(0.5D, 4, 2, 2, PROBE_TIMEOUT, linearWait, jumpingClock);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        // The second read sets the deadline of the half open state, which expires before any probe is acquired
+        jumpAt.set(reads.get() + 1);
+        acquire(breaker).onSuccess();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        recordSuccess(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertThat(openings).containsExactly(1L);
+    }
+
+    @Test
+    public void circuitBreakerComputesOneWaitPerOpening() throws Exception {
+        int probes = 64;
+        AtomicReference<CircuitBreaker> breakerRef = new AtomicReference<>();
+        AtomicInteger waits = new AtomicInteger();
+        AtomicInteger permittedWhileOpening = new AtomicInteger();
+        WaitStrategy countingWait = attempt -> {
+            waits.incrementAndGet();
+            CircuitBreaker breaker = breakerRef.get();
+            // The open state fails fast while its wait is being computed
+            if (breaker.getState() != CircuitBreaker.State.OPEN || breaker.tryAcquirePermission().isPresent()) {
+                permittedWhileOpening.incrementAndGet();
+            }
+            return 1000L;
+        };
+        CircuitBreaker breaker = new CircuitBreaker(0.5D, 4, 2, probes, PROBE_TIMEOUT, countingWait, clock::get);
+        breakerRef.set(breaker);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        advance(1000L);
+        List<CircuitBreaker.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < probes; i++) {
+            permits.add(acquire(breaker));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (CircuitBreaker.Permit permit : permits) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    permit.onError();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, waits.get());
+        assertEquals(0, permittedWhileOpening.get());
+    }
+
+    @Test
+    public void circuitBreakerWaitStrategyFailure() {
+        CircuitBreaker breaker = breaker(attempt -> {
+            throw new IllegalStateException("wait strategy failure");
+        });
+        recordFailure(breaker);
+        try {
+            recordFailure(breaker);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("wait strategy failure", e.getMessage());
+        }
+        // The circuit breaker does not stay open forever without a wait
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        recordSuccess(breaker);
+        recordSuccess(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void circuitBreakerCapsTheWait() {
+        clock.set(Long.MAX_VALUE / 4L);
+        CircuitBreaker breaker = breaker(attempt -> Long.MAX_VALUE);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission().isPresent());
+    }
+
+    @Test
+    public void callRecordsOutcomes() throws Exception {
+        CircuitBreaker breaker = breaker(linearWait);
+        assertEquals("ok", breaker.call(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        try {
+            breaker.call(() -> {
+                throw new IOException("down");
+            });
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("down", e.getMessage());
+        }
+        // One failure out of two calls reaches the failure rate threshold
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void callRecordsErrors() throws Exception {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordSuccess(breaker);
+        try {
+            breaker.call(() -> {
+                throw new AssertionError("boom");
+            });
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        advance(1000L);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        try {
+            breaker.call(() -> {
+                throw new AssertionError("boom");
+            });
+            fail("Expected AssertionError");
+        } catch (AssertionError e) {
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        }
+    }
+
+    @Test(expected = CircuitBreakerOpenException.class)
+    public void callFailsFastWhenOpen() throws Exception {
+        CircuitBreaker breaker = breaker(linearWait);
+        recordFailure(breaker);
+        recordFailure(breaker);
+        breaker.call(() -> "ok");
+    }
+
+    @Test
+    public void stopIfOpen() {
+        CircuitBreaker breaker = breaker(linearWait);
+        StopStrategy stopStrategy = breaker.stopIfOpen(StopStrategies.stopAfterAttempt(3));
+        Attempt<?> attempt = new FailedAttempt<>(1L, 0L, null);
+        assertFalse(stopStrategy.shouldStop(attempt));
+        assertTrue(stopStrategy.shouldStop(new FailedAttempt<>(3L, 0L, null)));
+        recordFailure(breaker);
+        recordFailure(breaker);
+        assertTrue(stopStrategy.shouldStop(attempt));
+    }
+
+    @Test
+    public void retryerStopsWhenOpen() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0.5D, 4, 2, 2, WaitStrategies.exponentialJitterWait(
+                Duration.ofMinutes(1L), Duration.ofMinutes(10L)));
+        AtomicInteger calls = new AtomicInteger();
+        Retryer<String> retryer = RetryerBuilder.<String>newBuilder()
+                .retryIfException()
+                .withStopStrategy(breaker.stopIfOpen(StopStrategies.stopAfterAttempt(10)))
+                .build();
+        try {
+            retryer.call(() -> breaker.call(() -> {
+                calls.incrementAndGet();
+                throw new IOException("down");
+            }));
+            fail("Expected RetryException");
+        } catch (RetryException e) {
+            assertEquals(2, e.getNumberOfFailedAttempts());
+        }
+        assertEquals(2, calls.get());
+    }
+}
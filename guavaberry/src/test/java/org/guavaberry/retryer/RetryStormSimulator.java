@@ -0,0 +1,290 @@
+package org.guavaberry.retryer;
+
+import com.github.rholder.retry.WaitStrategy;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import org.guavaberry.collections.DefaultHashMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deterministic discrete-event simulator of N clients retrying against a server with finite capacity.
+ *
+ * <p>Each client starts at a random time within the arrival window and keeps calling the server until
+ * it succeeds or it reaches the max number of attempts. Between two attempts the client sleeps for the time
+ * computed by its {@link WaitStrategy}. The server accepts up to {@code capacityPerSecond} requests for each
+ * second of simulated time and rejects the exceeding ones. During the outage windows every request fails.
+ *
+ * <p>Time is simulated, so a run takes milliseconds of wall clock regardless of the timeouts involved, and
+ * the same seed always gives the same {@link Report} provided the wait strategies draw their jitter from
+ * the {@link Random} passed to the strategy factory.
+ *
+ * <p>Run {@link #main(String[])} to compare the strategies of {@link WaitStrategies} on the same scenario:
+ * <pre>
+ * {@code
+ *     mvn -pl guavaberry test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=org.guavaberry.retryer.RetryStormSimulator
+ * }
+ * </pre>
+ */
+public final class RetryStormSimulator {
+    private static final long BUCKET_MILLIS = 1000L;
+
+    private final int clients;
+    private final Duration arrivalWindow;
+    private final int capacityPerSecond;
+    private final List<Range<Duration>> outages;
+    private final int maxAttempts;
+    private final long seed;
+
+    /**
+     * @param clients number of competing clients.
+     * @param arrivalWindow the clients start uniformly within [0, arrivalWindow).
+     * @param capacityPerSecond requests the server can serve for each second of simulated time.
+     * @param outages the windows in which the server fails every request.
+     * @param maxAttempts the client gives up after this number of attempts.
+     * @param seed the seed of the random generator.
+     */
+    public RetryStormSimulator(final int clients, final Duration arrivalWindow, final int capacityPerSecond,
+                               final List<Range<Duration>> outages, final int maxAttempts, final long seed) {
+        Objects.requireNonNull(arrivalWindow, "The arrival window may not be null");
+        Objects.requireNonNull(outages, "The outages may not be null");
+        Preconditions.checkArgument(clients > 0, "clients must be > 0 but is %s", clients);
+        Preconditions.checkArgument(arrivalWindow.toMillis() > 0L, "arrivalWindow must be > 0 but is %s",
+                                    arrivalWindow);
+        Preconditions.checkArgument(capacityPerSecond > 0, "capacityPerSecond must be > 0 but is %s",
+                                    capacityPerSecond);
+        Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be > 0 but is %s", maxAttempts);
+        this.clients = clients;
+        this.arrivalWindow = arrivalWindow;
+        this.capacityPerSecond = capacityPerSecond;
+        this.outages = ImmutableList.copyOf(outages);
+        this.maxAttempts = maxAttempts;
+        this.seed = seed;
+    }
+
+    /**
+     * Factory of the wait strategy used by a client.
+     */
+    public interface StrategyFactory {
+        /**
+         * @param random the seeded random generator of the simulation, to be used for the jitter.
+         * @return the wait strategy for a client. Return the same instance to share it among the clients.
+         */
+        WaitStrategy create(Random random);
+    }
+
+    /**
+     * Run the simulation.
+     *
+     * @param factory the factory invoked once per client.
+     * @return the report of the simulation.
+     */
+    public Report run(final StrategyFactory factory) {
+        Objects.requireNonNull(factory, "The strategy factory may not be null");
+        Random random = new Random(seed);
+        PriorityQueue<Event> events = new PriorityQueue<>(
+                Comparator.comparingLong((Event e) -> e.time).thenComparingInt(e -> e.client));
+        long[] startTimes = new long[clients];
+        WaitStrategy[] strategies = new WaitStrategy[clients];
+        for (int client = 0; client < clients; client++) {
+            startTimes[client] = (long) (random.nextDouble() * arrivalWindow.toMillis());
+            strategies[client] = factory.create(random);
+            events.add(new Event(startTimes[client], client, 1L));
+        }
+
+        DefaultHashMap<Long, AtomicInteger> load = new DefaultHashMap<>(AtomicInteger::new);
+        List<Long> completionTimes = new ArrayList<>(clients);
+        long totalWork = 0L;
+        long lastRejection = -1L;
+        int gaveUp = 0;
+
+        while (!events.isEmpty()) {
+            Event event = events.poll();
+            totalWork++;
+            int bucketLoad = load.get(event.time / BUCKET_MILLIS).incrementAndGet();
+            boolean success = !isOutage(event.time) && bucketLoad <= capacityPerSecond;
+            WaitStrategy strategy = strategies[event.client];
+
+            if (success) {
+                if (strategy instanceof AdaptiveWaitStrategy) {
+                    ((AdaptiveWaitStrategy) strategy).onSuccess();
+                }
+                completionTimes.add(event.time - startTimes[event.client]);
+                continue;
+            }
+            lastRejection = Math.max(lastRejection, event.time);
+            if (event.attempt >= maxAttempts) {
+                gaveUp++;
+            } else {
+                long sleepTime = strategy.computeSleepTime(
+                        new FailedAttempt<>(event.attempt, event.time - startTimes[event.client], null));
+                events.add(new Event(event.time + Math.max(sleepTime, 0L), event.client, event.attempt + 1));
+            }
+        }
+
+        int peakLoad = load.values().stream().mapToInt(AtomicInteger::get).max().orElse(0);
+        long outageEnd = outages.stream().mapToLong(o -> o.upperEndpoint().toMillis()).max().orElse(0L);
+        // The server is back to serving every request it receives from the second after the last rejection
+        long recoveredAt = lastRejection < 0L ? 0L : (lastRejection / BUCKET_MILLIS + 1L) * BUCKET_MILLIS;
+        Collections.sort(completionTimes);
+        return new Report(peakLoad, totalWork, completionTimes, gaveUp, Math.max(0L, recoveredAt - outageEnd));
+    }
+
+    /**
+     * @param factory the factory of the strategy to share.
+     * @return a factory returning the same instance of wait strategy to all the clients of a run.
+     */
+    public static StrategyFactory shared(final StrategyFactory factory) {
+        Objects.requireNonNull(factory, "The strategy factory may not be null");
+        WaitStrategy[] instance = new WaitStrategy[1];
+        return random -> {
+            if (instance[0] == null) {
+                instance[0] = factory.create(random);
+            }
+            return instance[0];
+        };
+    }
+
+    private boolean isOutage(final long time) {
+        Duration now = Duration.ofMillis(time);
+        return outages.stream().anyMatch(o -> o.contains(now));
+    }
+
+    /**
+     * The outcome of a simulation.
+     */
+    public static final class Report {
+        /**
+         * The completion time of the clients that gave up.
+         */
+        public static final Duration NEVER = Duration.ofMillis(Long.MAX_VALUE);
+
+        private final int peakLoad;
+        private final long totalWork;
+        private final List<Long> completionTimes;
+        private final int gaveUp;
+        private final long recoveryTime;
+
+        Report(final int peakLoad, final long totalWork, final List<Long> completionTimes, final int gaveUp,
+               final long recoveryTime) {
+            this.peakLoad = peakLoad;
+            this.totalWork = totalWork;
+            this.completionTimes = completionTimes;
+            this.gaveUp = gaveUp;
+            this.recoveryTime = recoveryTime;
+        }
+
+        /**
+         * @return the max number of requests received by the server in a single second.
+         */
+        public int getPeakLoad() {
+            return peakLoad;
+        }
+
+        /**
+         * @return the number of requests received by the server, including the rejected ones.
+         */
+        public long getTotalWork() {
+            return totalWork;
+        }
+
+        /**
+         * @return the number of clients that succeeded.
+         */
+        public int getCompleted() {
+            return completionTimes.size();
+        }
+
+        /**
+         * @return the number of clients that reached the max number of attempts.
+         */
+        public int getGaveUp() {
+            return gaveUp;
+        }
+
+        /**
+         * The percentiles are computed over all the clients: the ones that gave up count as never completed,
+         * so a strategy cannot improve its percentiles by giving up earlier.
+         *
+         * @param percentile a value in the interval [0.0, 100.0].
+         * @return the time from the start of a client to its success at the given percentile, {@link #NEVER}
+         *         if the percentile falls among the clients that gave up.
+         */
+        public Duration getCompletionTime(final double percentile) {
+            Preconditions.checkArgument(percentile >= 0.0D && percentile <= 100.0D,
+                                        "percentile must be in [0.0, 100.0] but is %s", percentile);
+            int index = Math.max(0, (int) Math.ceil(percentile / 100.0D * (completionTimes.size() + gaveUp)) - 1);
+            if (index >= completionTimes.size()) {
+                return NEVER;
+            }
+            return Duration.ofMillis(completionTimes.get(index));
+        }
+
+        /**
+         * @return the time from the end of the last outage to the first second from which the server serves every
+         *         request it receives, i.e. the retry storm is over. Zero if no request is rejected after the
+         *         outages.
+         */
+        public Duration getRecoveryTime() {
+            return Duration.ofMillis(recoveryTime);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("peak=%6d/s work=%8d done=%6d gaveUp=%5d p50=%11s p99=%11s recovery=%9dms",
+                                 peakLoad, totalWork, getCompleted(), gaveUp, format(getCompletionTime(50.0D)),
+                                 format(getCompletionTime(99.0D)), recoveryTime);
+        }
+
+        private static String format(final Duration duration) {
+            return NEVER.equals(duration) ? "never" : duration.toMillis() + "ms";
+        }
+    }
+
+    private static final class Event {
+        private final long time;
+        private final int client;
+        private final long attempt;
+
+        Event(final long time, final int client, final long attempt) {
+            this.time = time;
+            this.client = client;
+            this.attempt = attempt;
+        }
+    }
+
+    /**
+     * Compare the wait strategies on a scenario of 10000 clients against a server serving 500 requests per second,
+     * with an outage in the first 30 seconds.
+     *
+     * @param args unused.
+     */
+    public static void main(final String[] args) {
+        RetryStormSimulator simulator = new RetryStormSimulator(
+                10000, Duration.ofSeconds(10L), 500,
+                Collections.singletonList(Range.closedOpen(Duration.ZERO, Duration.ofSeconds(30L))), 20, 42L);
+        Duration base = Duration.ofMillis(100L);
+        Duration max = Duration.ofMinutes(1L);
+
+        System.out.println(String.format("%-28s %s", "exponentialWait",
+                                         simulator.run(random -> WaitStrategies.exponentialWait(base, max))));
+        for (double factor : Arrays.asList(0.1D, 0.25D, 0.5D, 0.75D, 1.0D)) {
+            System.out.println(String.format("%-28s %s", "exponentialJitterWait(" + factor + ")", simulator.run(
+                    random -> WaitStrategies.exponentialJitterWait(base, max, factor, random))));
+        }
+        System.out.println(String.format("%-28s %s", "adaptiveJitterWait(0.5)",
+                                         simulator.run(shared(random -> WaitStrategies.adaptiveJitterWait(
+                                                 base, max, 0.5D, random)))));
+    }
+}
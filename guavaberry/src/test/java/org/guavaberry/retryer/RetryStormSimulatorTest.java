@@ -0,0 +1,97 @@
+package org.guavaberry.retryer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RetryStormSimulatorTest {
+    private static final Duration BASE = Duration.ofMillis(100L);
+    private static final Duration MAX = Duration.ofSeconds(30L);
+
+    private final RetryStormSimulator simulator = new RetryStormSimulator(
+            1000, Duration.ofSeconds(1L), 100,
+            Collections.singletonList(Range.closedOpen(Duration.ZERO, Duration.ofSeconds(5L))), 30, 42L);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void simulatorNoClients() {
+        new RetryStormSimulator(0, Duration.ofSeconds(1L), 100, Collections.emptyList(), 1, 0L);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void simulatorNullOutages() {
+        new RetryStormSimulator(1, Duration.ofSeconds(1L), 100, null, 1, 0L);
+    }
+
+    @Test
+    public void simulatorIsDeterministic() {
+        RetryStormSimulator.Report first = simulator.run(
+                random -> WaitStrategies.exponentialJitterWait(BASE, MAX, 0.5D, random));
+        RetryStormSimulator.Report second = simulator.run(
+                random -> WaitStrategies.exponentialJitterWait(BASE, MAX, 0.5D, random));
+        assertEquals(first.toString(), second.toString());
+    }
+
+    @Test
+    public void simulatorWithoutContention() {
+        RetryStormSimulator.Report report = new RetryStormSimulator(
+                50, Duration.ofSeconds(1L), 100, Collections.emptyList(), 1, 42L)
+                .run(random -> WaitStrategies.exponentialWait(BASE, MAX));
+        assertEquals(50, report.getPeakLoad());
+        assertEquals(50L, report.getTotalWork());
+        assertEquals(50, report.getCompleted());
+        assertEquals(0, report.getGaveUp());
+        assertEquals(Duration.ZERO, report.getCompletionTime(99.0D));
+    }
+
+    @Test
+    public void simulatorGivesUp() {
+        RetryStormSimulator.Report report = simulator.run(
+                random -> com.github.rholder.retry.WaitStrategies.noWait());
+        assertEquals(0, report.getCompleted());
+        assertEquals(1000, report.getGaveUp());
+        assertEquals(30000L, report.getTotalWork());
+        assertEquals(RetryStormSimulator.Report.NEVER, report.getCompletionTime(0.0D));
+        assertEquals(RetryStormSimulator.Report.NEVER, report.getCompletionTime(50.0D));
+        assertEquals(Duration.ZERO, report.getRecoveryTime());
+    }
+
+    @Test
+    public void simulatorGivenUpCountInPercentiles() {
+        RetryStormSimulator.Report report = new RetryStormSimulator(
+                100, Duration.ofSeconds(1L), 10, Collections.emptyList(), 1, 42L)
+                .run(random -> WaitStrategies.exponentialWait(BASE, MAX));
+        assertEquals(10, report.getCompleted());
+        assertEquals(90, report.getGaveUp());
+        assertEquals(Duration.ZERO, report.getCompletionTime(10.0D));
+        assertEquals(RetryStormSimulator.Report.NEVER, report.getCompletionTime(11.0D));
+        assertEquals(Duration.ofSeconds(1L), report.getRecoveryTime());
+    }
+
+    @Test
+    public void simulatorJitterSpreadsLoad() {
+        RetryStormSimulator.Report exponential = simulator.run(random -> WaitStrategies.exponentialWait(BASE, MAX));
+        RetryStormSimulator.Report jitter = simulator.run(
+                random -> WaitStrategies.exponentialJitterWait(BASE, MAX, 1.0D, random));
+        assertEquals(1000, exponential.getCompleted());
+        assertEquals(1000, jitter.getCompleted());
+        assertThat(jitter.getRecoveryTime()).isLessThan(exponential.getRecoveryTime());
+        assertThat(jitter.getCompletionTime(99.0D)).isLessThan(exponential.getCompletionTime(99.0D));
+        assertThat(jitter.getCompletionTime(50.0D)).isLessThanOrEqualTo(jitter.getCompletionTime(99.0D));
+    }
+
+    @Test
+    public void simulatorSharedAdaptiveStrategy() {
+        RetryStormSimulator.Report report = simulator.run(RetryStormSimulator.shared(
+                random -> WaitStrategies.adaptiveJitterWait(BASE, MAX, 0.5D, random)));
+        RetryStormSimulator.Report exponential = simulator.run(random -> WaitStrategies.exponentialWait(BASE, MAX));
+        assertEquals(1000, report.getCompleted());
+        assertThat(report.getTotalWork()).isLessThan(exponential.getTotalWork());
+        assertThat(report.getPeakLoad()).isLessThanOrEqualTo(exponential.getPeakLoad());
+    }
+}
@@ -8,7 +8,7 @@ set -e -u
 if [ "$TRAVIS_BRANCH" == "master" ]; then
 
   # If branch master, deploy a release instead of a snapshot
-  sed -ie "s/-SNAPSHOT//" pom.xml
+  sed -ie "s/-SNAPSHOT//" pom.xml */pom.xml
 
 fi
 
@@ -18,7 +18,7 @@ elif [ "$TRAVIS_BRANCH" == "master" ]; then
   ls -la util/
 
   # If branch master deploy a release instead of a snapshot
-  sed -ie "s/-SNAPSHOT//" pom.xml
+  sed -ie "s/-SNAPSHOT//" pom.xml */pom.xml
 
   mvn clean deploy --settings="util/deploy-settings.xml" -DskipTests=true -DperformRelease=true -Dgpg.passphrase=${GPG_PASSPHRASE} -Dgpg.keyname=${GPG_KEYNAME}
 